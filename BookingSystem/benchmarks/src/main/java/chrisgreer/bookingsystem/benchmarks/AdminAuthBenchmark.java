@@ -0,0 +1,44 @@
+package chrisgreer.bookingsystem.benchmarks;
+
+import chrisgreer.bookingsystem.services.AdminTokenService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/// Credential check per admin request: httpBasic's BCrypt (default strength, as SecurityConfig) vs a bearer token
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AdminAuthBenchmark {
+
+    private static final String PASSWORD = "correct horse battery staple";
+
+    private BCryptPasswordEncoder encoder;
+    private String hash;
+    private AdminTokenService tokenService;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        encoder = new BCryptPasswordEncoder();
+        hash = encoder.encode(PASSWORD);
+        tokenService = new AdminTokenService("benchmark-secret-benchmark-secret-benchmark", Duration.ofMinutes(15), false);
+        token = tokenService.issue("admin").getToken();
+    }
+
+    @Benchmark
+    public boolean basicBcrypt() {
+        return encoder.matches(PASSWORD, hash);
+    }
+
+    @Benchmark
+    public Optional<String> bearerVerify() {
+        return tokenService.verify(token);
+    }
+}
@@ -0,0 +1,36 @@
+package chrisgreer.bookingsystem.benchmarks;
+
+import chrisgreer.bookingsystem.dtos.BookingDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/// Jackson encoding of the listing endpoints' body, at a few list sizes
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookingDtoSerializationBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int size;
+
+    private ObjectMapper objectMapper;
+    private List<BookingDto> dtos;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Fixtures.objectMapper();
+        dtos = Fixtures.dtos(size);
+    }
+
+    @Benchmark
+    public byte[] writeValueAsBytes() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(dtos);
+    }
+}
@@ -0,0 +1,43 @@
+package chrisgreer.bookingsystem.benchmarks;
+
+import chrisgreer.bookingsystem.dtos.BookingDto;
+import chrisgreer.bookingsystem.dtos.RequestBookingDto;
+import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.mappers.BookingMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/// MapStruct generated BookingMapperImpl
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookingMapperBenchmark {
+
+    private BookingMapper mapper;
+    private Booking booking;
+    private RequestBookingDto request;
+
+    @Setup
+    public void setUp() {
+        mapper = Fixtures.mapper();
+        booking = Fixtures.booking(1);
+        request = Fixtures.request();
+    }
+
+    @Benchmark
+    public BookingDto toDto() {
+        return mapper.toDto(booking);
+    }
+
+    @Benchmark
+    public Booking applyRequestToBooking() {
+        //Fresh target each time, as a real request would have
+        Booking target = new Booking();
+        mapper.applyRequestToBooking(request, target);
+        return target;
+    }
+}
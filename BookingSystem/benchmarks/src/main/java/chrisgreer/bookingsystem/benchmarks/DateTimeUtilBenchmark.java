@@ -0,0 +1,28 @@
+package chrisgreer.bookingsystem.benchmarks;
+
+import chrisgreer.bookingsystem.utils.DateTimeUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.OffsetDateTime;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DateTimeUtilBenchmark {
+
+    private OffsetDateTime dateTime;
+
+    @Setup
+    public void setUp() {
+        dateTime = Fixtures.START;
+    }
+
+    @Benchmark
+    public String format() {
+        return DateTimeUtil.format(dateTime);
+    }
+}
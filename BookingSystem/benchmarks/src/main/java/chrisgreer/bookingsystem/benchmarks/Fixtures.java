@@ -0,0 +1,66 @@
+package chrisgreer.bookingsystem.benchmarks;
+
+import chrisgreer.bookingsystem.dtos.BookingDto;
+import chrisgreer.bookingsystem.dtos.RequestBookingDto;
+import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.mappers.BookingMapper;
+import chrisgreer.bookingsystem.model.BookingStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.mapstruct.factory.Mappers;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/// Realistic-looking data, fixed so runs are comparable
+public class Fixtures {
+
+    public static final OffsetDateTime START = OffsetDateTime.of(2030, 3, 12, 9, 30, 0, 0, ZoneOffset.UTC);
+
+    public static BookingMapper mapper() {
+        return Mappers.getMapper(BookingMapper.class);
+    }
+
+    /// Configured the way spring.jackson.serialization.write-dates-as-timestamps=false leaves it
+    public static ObjectMapper objectMapper() {
+        return JsonMapper.builder()
+                .addModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+    }
+
+    public static Booking booking(long id) {
+        Booking booking = new Booking();
+        booking.setId(id);
+        booking.setName("Alexandra Example");
+        booking.setEmail("alexandra@example.com");
+        booking.setPhone("+447700900123");
+        booking.setTopic("Initial consultation");
+        booking.setNotes("Would like to talk through options for the spring, mornings preferred.");
+        booking.setStartTime(START.plusMinutes(30 * id));
+        booking.setEndTime(START.plusMinutes(30 * id + 30));
+        booking.setStatus(BookingStatus.PENDING);
+        return booking;
+    }
+
+    public static RequestBookingDto request() {
+        RequestBookingDto request = new RequestBookingDto();
+        request.setName("Alexandra Example");
+        request.setEmail("alexandra@example.com");
+        request.setPhone("+447700900123");
+        request.setTopic("Initial consultation");
+        request.setNotes("Would like to talk through options for the spring, mornings preferred.");
+        return request;
+    }
+
+    public static List<BookingDto> dtos(int size) {
+        var mapper = mapper();
+        List<BookingDto> dtos = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) dtos.add(mapper.toDto(booking(i)));
+        return dtos;
+    }
+}
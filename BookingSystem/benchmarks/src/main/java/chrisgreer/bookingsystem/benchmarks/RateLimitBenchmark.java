@@ -0,0 +1,64 @@
+package chrisgreer.bookingsystem.benchmarks;
+
+import chrisgreer.bookingsystem.services.RateLimitService;
+import chrisgreer.bookingsystem.services.RateLimitService.Route;
+import chrisgreer.bookingsystem.utils.TokenBuckets;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/// What RateLimitFilter adds to a public request: RateLimitService.admit (clock, bucket, metrics),
+/// for one busy client, 10k clients taking turns, a client being turned away, and 4 threads on one address
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RateLimitBenchmark {
+
+    private static final int CLIENTS = 10_000;
+
+    private RateLimitService service;
+    private TokenBuckets limited;
+    private String[] clients;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        //Limits far above what the benchmark can reach, so every admit is let through
+        service = new RateLimitService(true, 20_000, 1_000_000_000, Integer.MAX_VALUE, 1_000_000_000, Integer.MAX_VALUE);
+        limited = new TokenBuckets(1, 1, Duration.ofHours(1), 20_000);
+        limited.tryAcquire("203.0.113.7", System.nanoTime());
+        clients = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) clients[i] = "10.0." + (i >> 8) + "." + (i & 0xff);
+    }
+
+    @Benchmark
+    public long oneClient() {
+        return service.admit(Route.PUBLIC, "203.0.113.7");
+    }
+
+    @Benchmark
+    public long manyClients(Cursor cursor) {
+        String client = clients[cursor.next];
+        cursor.next = (cursor.next + 1) % CLIENTS;
+        return service.admit(Route.PUBLIC, client);
+    }
+
+    @Benchmark
+    public long rejected() {
+        return limited.tryAcquire("203.0.113.7", System.nanoTime());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long oneClientFourThreads() {
+        return service.admit(Route.PUBLIC, "203.0.113.7");
+    }
+}
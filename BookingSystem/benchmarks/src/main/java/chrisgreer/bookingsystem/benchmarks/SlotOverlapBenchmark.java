@@ -0,0 +1,69 @@
+package chrisgreer.bookingsystem.benchmarks;
+
+import chrisgreer.bookingsystem.model.SlotRange;
+import chrisgreer.bookingsystem.utils.SlotIntervalIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/// Checking a batch of new slots for clashes against existing ones, index vs scanning every slot
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SlotOverlapBenchmark {
+
+    private static final int BATCH = 2_000;
+
+    @Param({"1000", "10000", "50000"})
+    public int existing;
+
+    private SlotIntervalIndex index;
+    private List<SlotRange> all;
+    private List<SlotRange> batch;
+
+    @Setup
+    public void setUp() {
+        index = new SlotIntervalIndex();
+        all = new ArrayList<>(existing);
+        //Existing: 30 minute slots on the hour, new: 30 minute slots at quarter past, so about half clash
+        for (int i = 0; i < existing; i++) {
+            var start = Fixtures.START.plusHours(i);
+            var slot = new SlotRange((long) i, start, start.plusMinutes(30));
+            index.put(slot);
+            all.add(slot);
+        }
+        //Spread over the whole range of existing ones
+        long stepMinutes = existing * 60L / BATCH;
+        batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            var start = Fixtures.START.plusMinutes(15 + i * stepMinutes);
+            batch.add(new SlotRange(null, start, start.plusMinutes(30)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void index(Blackhole bh) {
+        for (SlotRange slot : batch) bh.consume(index.findOverlap(slot.startTime(), slot.endTime()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void linearScan(Blackhole bh) {
+        for (SlotRange slot : batch) bh.consume(scan(slot.startTime(), slot.endTime()));
+    }
+
+    private SlotRange scan(OffsetDateTime start, OffsetDateTime end) {
+        for (SlotRange s : all) {
+            if (s.startTime().isBefore(end) && s.endTime().isAfter(start)) return s;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,68 @@
+package chrisgreer.bookingsystem.benchmarks;
+
+import chrisgreer.bookingsystem.services.SlowQueryLog;
+import com.zaxxer.hikari.HikariDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/// What the datasource-proxy in front of the pools adds to a statement: the same pooled, prepared
+/// one-row SELECT with a bound parameter, straight from Hikari and through the proxy with SlowQueryLog
+/// listening (under the threshold, so timed and counted but not logged). H2 in memory, so the
+/// statement itself is as cheap as it gets and the difference is all proxy
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SlowQueryLogBenchmark {
+
+    private HikariDataSource pool;
+    private DataSource proxied;
+    private SlowQueryLog slowQueryLog;
+
+    @Setup
+    public void setUp() throws SQLException {
+        pool = new HikariDataSource();
+        pool.setJdbcUrl("jdbc:h2:mem:slowquery;DB_CLOSE_DELAY=-1");
+        pool.setMaximumPoolSize(1);
+        try (var connection = pool.getConnection(); var statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE booking (id BIGINT PRIMARY KEY, status VARCHAR(20))");
+            statement.execute("INSERT INTO booking VALUES (1, 'AVAILABLE')");
+        }
+        slowQueryLog = new SlowQueryLog(pool, true, Duration.ofMillis(200), true, true, 20, 256);
+        proxied = ProxyDataSourceBuilder.create("booking", pool).listener(slowQueryLog).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        slowQueryLog.shutdown();
+        pool.close();
+    }
+
+    @Benchmark
+    public String direct() throws SQLException {
+        return select(pool);
+    }
+
+    @Benchmark
+    public String throughProxy() throws SQLException {
+        return select(proxied);
+    }
+
+    private static String select(DataSource dataSource) throws SQLException {
+        try (var connection = dataSource.getConnection();
+             var statement = connection.prepareStatement("SELECT status FROM booking WHERE id = ?")) {
+            statement.setLong(1, 1L);
+            try (var rows = statement.executeQuery()) {
+                rows.next();
+                return rows.getString(1);
+            }
+        }
+    }
+}
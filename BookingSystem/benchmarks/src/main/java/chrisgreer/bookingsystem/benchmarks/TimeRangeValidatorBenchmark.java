@@ -0,0 +1,69 @@
+package chrisgreer.bookingsystem.benchmarks;
+
+import chrisgreer.bookingsystem.dtos.CreateAvailableSlotDto;
+import chrisgreer.bookingsystem.validation.TimeRangeValidator;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.OffsetDateTime;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/// The validator on its own, and the full @Valid pass Spring runs on POST /booking/admin
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimeRangeValidatorBenchmark {
+
+    private TimeRangeValidator timeRangeValidator;
+    private ValidatorFactory factory;
+    private Validator validator;
+    private CreateAvailableSlotDto validSlot;
+    private CreateAvailableSlotDto invalidSlot;
+
+    @Setup
+    public void setUp() {
+        timeRangeValidator = new TimeRangeValidator();
+        factory = Validation.buildDefaultValidatorFactory();
+        validator = factory.getValidator();
+
+        //Far in the future so @Future holds for as long as this code is around
+        var start = OffsetDateTime.now().plusYears(10);
+        validSlot = slot(start, start.plusMinutes(30));
+        invalidSlot = slot(start.plusMinutes(30), start);
+    }
+
+    @TearDown
+    public void tearDown() {
+        factory.close();
+    }
+
+    @Benchmark
+    public boolean isValid() {
+        //Context is only touched when rejecting
+        return timeRangeValidator.isValid(validSlot, null);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<CreateAvailableSlotDto>> validateValid() {
+        return validator.validate(validSlot);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<CreateAvailableSlotDto>> validateInvalid() {
+        return validator.validate(invalidSlot);
+    }
+
+    private static CreateAvailableSlotDto slot(OffsetDateTime start, OffsetDateTime end) {
+        var dto = new CreateAvailableSlotDto();
+        dto.setStartTime(start);
+        dto.setEndTime(end);
+        return dto;
+    }
+}
@@ -0,0 +1,32 @@
+package chrisgreer.bookingsystem.services;
+
+import chrisgreer.bookingsystem.benchmarks.Fixtures;
+import chrisgreer.bookingsystem.entities.Booking;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/// Lives in the services package to reach the package-private body builder
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmailBodyBenchmark {
+
+    private EmailService emailService;
+    private Booking booking;
+
+    @Setup
+    public void setUp() {
+        //Outbox isn't touched when only building the body
+        emailService = new EmailService(null);
+        booking = Fixtures.booking(1);
+    }
+
+    @Benchmark
+    public String buildBookingDetailsBody() {
+        return emailService.buildBookingDetailsBody(booking);
+    }
+}
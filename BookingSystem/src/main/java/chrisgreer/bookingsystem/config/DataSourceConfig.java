@@ -0,0 +1,89 @@
+package chrisgreer.bookingsystem.config;
+
+import chrisgreer.bookingsystem.services.SlowQueryLog;
+import com.zaxxer.hikari.HikariDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/// Two Hikari pools, each sized on its own: the primary (spring.datasource.*) for writes, and an
+/// optional read replica (booking.datasource.replica.*) for read-only transactions.
+///
+/// The DataSource everything else sees is a LazyConnectionDataSourceProxy, which holds off fetching
+/// a real connection until the first statement. By then the transaction has marked it read-only
+/// or not, and that decides the pool. With no replica url set, everything stays on the primary.
+/// Outside that sits a datasource-proxy, which times every statement for SlowQueryLog.
+@Configuration
+public class DataSourceConfig {
+
+    /// The pool Boot would have built. Flyway migrates this one, never the replica
+    @Bean
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        pool.setPoolName("primary");
+        return pool;
+    }
+
+    /// Credentials default to the primary's, for a streaming replica of the same cluster.
+    /// Decided here at startup rather than with a @Conditional, which an AOT build would settle at build time
+    @Bean
+    public HikariDataSource replicaDataSource(DataSourceProperties properties,
+                                              Environment environment,
+                                              @Value("${booking.datasource.replica.url:}") String url,
+                                              @Value("${booking.datasource.replica.username:${spring.datasource.username}}") String username,
+                                              @Value("${booking.datasource.replica.password:${spring.datasource.password}}") String password) {
+        //No bean at all, so health checks and metrics only see the primary
+        if (url.isBlank()) return null;
+
+        HikariDataSource pool = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(properties.determineDriverClassName())
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        Binder.get(environment).bind("booking.datasource.replica.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName("replica");
+        pool.setReadOnly(true);
+        return pool;
+    }
+
+    /// The AppCDS training run (-Dspring.context.exit=onRefresh, see the Dockerfile) has no database to
+    /// migrate. Everything else already waits for a first query before it connects
+    @Bean
+    public FlywayMigrationStrategy flywayMigrationStrategy(@Value("${spring.context.exit:}") String exit) {
+        return flyway -> {
+            if (!"onRefresh".equals(exit)) flyway.migrate();
+        };
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") ObjectProvider<DataSource> replica,
+                                 SlowQueryLog slowQueryLog) {
+        var dataSource = new LazyConnectionDataSourceProxy(primary);
+        replica.ifAvailable(r -> dataSource.setReadOnlyDataSource(new ReplicaRoutingDataSource(primary, r)));
+        if (!slowQueryLog.isEnabled()) return dataSource;
+        return ProxyDataSourceBuilder.create("booking", dataSource)
+                .listener(slowQueryLog)
+                .build();
+    }
+}
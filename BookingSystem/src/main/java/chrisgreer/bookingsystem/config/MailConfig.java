@@ -0,0 +1,34 @@
+package chrisgreer.bookingsystem.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mail.MailProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.Properties;
+
+@Configuration
+@EnableConfigurationProperties(MailProperties.class)
+public class MailConfig {
+
+    /// In place of the JavaMailSenderImpl Boot would build, from the same spring.mail.* settings
+    @Bean
+    public PooledJavaMailSender mailSender(MailProperties properties,
+                                           @Value("${email.smtp.max-idle:2}") int maxIdle,
+                                           @Value("${email.smtp.idle-timeout:60s}") Duration idleTimeout,
+                                           @Value("${email.smtp.validate-after:10s}") Duration validateAfter) {
+        PooledJavaMailSender sender = new PooledJavaMailSender(maxIdle, idleTimeout, validateAfter);
+        sender.setHost(properties.getHost());
+        if (properties.getPort() != null) sender.setPort(properties.getPort());
+        sender.setUsername(properties.getUsername());
+        sender.setPassword(properties.getPassword());
+        sender.setProtocol(properties.getProtocol());
+        if (properties.getDefaultEncoding() != null) sender.setDefaultEncoding(properties.getDefaultEncoding().name());
+        Properties javaMail = new Properties();
+        javaMail.putAll(properties.getProperties());
+        sender.setJavaMailProperties(javaMail);
+        return sender;
+    }
+}
@@ -0,0 +1,15 @@
+package chrisgreer.bookingsystem.config;
+
+import chrisgreer.bookingsystem.web.ServiceResultObservationConvention;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    //Picked up by Boot's web MVC observation config in place of the default
+    @Bean
+    ServiceResultObservationConvention serviceResultObservationConvention() {
+        return new ServiceResultObservationConvention();
+    }
+}
@@ -0,0 +1,174 @@
+package chrisgreer.bookingsystem.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/// JavaMailSenderImpl connects (TCP, STARTTLS, AUTH) for every send call and quits after it. This one
+/// keeps up to email.smtp.max-idle authenticated connections open between calls and hands the most
+/// recently used one to the next send. send(MimeMessage...) already puts the whole array through one
+/// connection, which is how EmailOutboxDispatcher sends each batch.
+///
+/// A connection idle for longer than email.smtp.validate-after gets a NOOP before it's reused (one the
+/// server dropped sooner fails on the first message, which is sent again on a new connection). One idle
+/// past email.smtp.idle-timeout is closed, before the server times it out on its own.
+@Slf4j
+public class PooledJavaMailSender extends JavaMailSenderImpl implements MeterBinder {
+
+    private final int maxIdle;
+    private final long idleTimeoutNanos;
+    private final long validateAfterNanos;
+
+    //Most recently used first
+    private final ConcurrentLinkedDeque<Idle> idle = new ConcurrentLinkedDeque<>();
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+
+    private record Idle(Transport transport, long since) { }
+
+    public PooledJavaMailSender(int maxIdle, Duration idleTimeout, Duration validateAfter) {
+        this.maxIdle = maxIdle;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.validateAfterNanos = validateAfter.toNanos();
+    }
+
+    @Override
+    protected Transport connectTransport() throws MessagingException {
+        Idle next;
+        while ((next = idle.pollFirst()) != null) {
+            boolean recent = System.nanoTime() - next.since() < validateAfterNanos;
+            if (recent || next.transport().isConnected()) {
+                reused.increment();
+                return new Lease(next.transport(), recent);
+            }
+            closeQuietly(next.transport());
+        }
+        return new Lease(connectNew(), false);
+    }
+
+    private Transport connectNew() throws MessagingException {
+        Transport transport = super.connectTransport();
+        opened.increment();
+        return transport;
+    }
+
+    /// Oldest first, stops at the first one still inside the timeout
+    @Scheduled(fixedDelayString = "${email.smtp.idle-timeout:60s}", scheduler = SchedulingConfig.MAIL_SCHEDULER)
+    public void evictIdle() {
+        Idle oldest;
+        while ((oldest = idle.peekLast()) != null && System.nanoTime() - oldest.since() >= idleTimeoutNanos) {
+            if (idle.removeLastOccurrence(oldest)) closeQuietly(oldest.transport());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Idle next;
+        while ((next = idle.pollFirst()) != null) closeQuietly(next.transport());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("booking.email.smtp.sessions", opened, LongAdder::sum)
+                .description("Sends by whether they opened an SMTP connection or took an idle one")
+                .tag("connection", "new")
+                .register(registry);
+        FunctionCounter.builder("booking.email.smtp.sessions", reused, LongAdder::sum)
+                .description("Sends by whether they opened an SMTP connection or took an idle one")
+                .tag("connection", "reused")
+                .register(registry);
+        Gauge.builder("booking.email.smtp.idle", idle, ConcurrentLinkedDeque::size)
+                .description("SMTP connections open and waiting for the next send")
+                .register(registry);
+    }
+
+    private void giveBack(Transport transport) {
+        if (idle.size() < maxIdle) {
+            idle.offerFirst(new Idle(transport, System.nanoTime()));
+        } else {
+            closeQuietly(transport);
+        }
+    }
+
+    private static void closeQuietly(Transport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException ex) {
+            log.debug("Closing SMTP connection failed: {}", ex.getMessage());
+        }
+    }
+
+    /// What doSend sees: close() gives the connection back. doSend asks isConnected() before every
+    /// message, which on SMTPTransport is a NOOP round trip, so that's only passed on after a failure
+    private final class Lease extends Transport {
+
+        private Transport smtp;
+        //Taken from the pool without a NOOP, and nothing sent on it yet
+        private boolean unchecked;
+        private boolean suspect;
+        private boolean dead;
+        private boolean closed;
+
+        Lease(Transport smtp, boolean unchecked) {
+            super(getSession(), null);
+            this.smtp = smtp;
+            this.unchecked = unchecked;
+        }
+
+        @Override
+        public void sendMessage(Message message, Address[] addresses) throws MessagingException {
+            try {
+                smtp.sendMessage(message, addresses);
+                unchecked = false;
+            } catch (MessagingException | IllegalStateException ex) {
+                if (unchecked && !smtp.isConnected()) {
+                    //The server closed it while it sat idle, so nothing went. Once more on a new connection
+                    unchecked = false;
+                    closeQuietly(smtp);
+                    dead = true;
+                    smtp = connectNew();
+                    dead = false;
+                    sendMessage(message, addresses);
+                    return;
+                }
+                //A rejected recipient leaves the connection usable, a dropped one doesn't
+                suspect = true;
+                throw ex;
+            }
+        }
+
+        @Override
+        public boolean isConnected() {
+            if (closed || dead) return false;
+            if (suspect) {
+                suspect = false;
+                dead = !smtp.isConnected();
+            }
+            return !dead;
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            if (isConnected()) {
+                giveBack(smtp);
+            } else {
+                closeQuietly(smtp);
+            }
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package chrisgreer.bookingsystem.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/// Where read-only transactions get their connection from (see DataSourceConfig): the replica pool,
+/// unless the current thread has been pinned to the primary because it needs to see its own writes.
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private enum Target { PRIMARY, REPLICA }
+
+    private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica) {
+        setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(replica);
+        afterPropertiesSet();
+    }
+
+    /// Runs the reads on the primary, whatever their transaction says
+    public static <T> T onPrimary(Supplier<T> reads) {
+        boolean previous = pin();
+        try {
+            return reads.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /// Pins this thread to the primary until restore is called with what this returned
+    public static boolean pin() {
+        boolean previous = isPinned();
+        PINNED.set(Boolean.TRUE);
+        return previous;
+    }
+
+    public static void restore(boolean previous) {
+        if (previous) PINNED.set(Boolean.TRUE);
+        else PINNED.remove();
+    }
+
+    public static boolean isPinned() {
+        return PINNED.get() != null;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return isPinned() ? Target.PRIMARY : Target.REPLICA;
+    }
+}
@@ -0,0 +1,41 @@
+package chrisgreer.bookingsystem.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+@Configuration
+public class SchedulingConfig {
+
+    /// For @Scheduled(scheduler = ...) on the jobs that talk to the SMTP server
+    public static final String MAIL_SCHEDULER = "mailScheduler";
+
+    /// Background jobs stay on platform threads even when virtual threads are on.
+    /// Jakarta Mail's SMTPTransport does its socket I/O inside synchronized methods,
+    /// which on JDK 21 pins the carrier, and we only have one carrier on a single vCPU.
+    /// More than one thread, so a long archive run doesn't hold up the reminder tick or the SSE heartbeat.
+    @Bean
+    @Primary
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${booking.scheduler.pool-size:4}") int poolSize) {
+        return scheduler(poolSize, "background-");
+    }
+
+    /// The outbox and the SMTP connection pool on a thread of their own: an unreachable mail server
+    /// holds it for the connect timeout on every poll, and nothing else should wait behind that
+    @Bean(MAIL_SCHEDULER)
+    public ThreadPoolTaskScheduler mailScheduler() {
+        return scheduler(1, "mail-");
+    }
+
+    private static ThreadPoolTaskScheduler scheduler(int poolSize, String threadNamePrefix) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix(threadNamePrefix);
+        scheduler.setVirtualThreads(false);
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(30);
+        return scheduler;
+    }
+}
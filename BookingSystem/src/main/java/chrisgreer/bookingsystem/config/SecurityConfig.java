@@ -1,6 +1,15 @@
 package chrisgreer.bookingsystem.config;
 
 
+import chrisgreer.bookingsystem.controllers.BookingController;
+import chrisgreer.bookingsystem.services.AdminTokenService;
+import chrisgreer.bookingsystem.services.IdempotencyService;
+import chrisgreer.bookingsystem.services.RateLimitService;
+import chrisgreer.bookingsystem.web.AdminTokenFilter;
+import chrisgreer.bookingsystem.web.IdempotencyFilter;
+import chrisgreer.bookingsystem.web.RateLimitFilter;
+import chrisgreer.bookingsystem.web.ReadYourWritesFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -16,19 +25,28 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.AuthorizationFilter;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.filter.CorsFilter;
 
+import java.time.Duration;
+
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig {
 
     @Value("${admin.username}") private String adminUsername;
     @Value("${admin.password}") private String adminPassword;
+    @Value("${booking.datasource.replica.read-your-writes:5s}") private Duration readYourWritesWindow;
 
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http,
+                                                   AdminTokenService adminTokenService,
+                                                   IdempotencyService idempotencyService,
+                                                   RateLimitService rateLimitService,
+                                                   ObjectMapper objectMapper) throws Exception {
 
         //Use stateless sessions (token based)
         //Disable CSRF protection (cross site request forgery)
@@ -41,12 +59,22 @@ public class SecurityConfig {
                 .authorizeHttpRequests(c -> c
                     // Only Patch request and Defined GET for api is permitted
                     .requestMatchers(HttpMethod.PATCH, "/booking/request/*").permitAll()
-                    .requestMatchers(HttpMethod.GET, "/booking/public").permitAll()
+                    .requestMatchers(HttpMethod.GET, "/booking/public", "/booking/public/summary", "/booking/public/events").permitAll()
                     // Plus any static resources
                     .requestMatchers("/*.html", "/*.js", "/*.css", "/*.ico").permitAll()
+                    // Health checks from the platform, metrics still need the admin login
+                    .requestMatchers(HttpMethod.GET, "/actuator/health", "/actuator/health/liveness", "/actuator/health/readiness").permitAll()
                     // Everything else requires auth
                     .anyRequest().authenticated()
-                ).httpBasic(Customizer.withDefaults());
+                ).httpBasic(Customizer.withDefaults())
+                // Per client limits on the public endpoints, first thing after CORS (so browsers can read the 429)
+                .addFilterAfter(new RateLimitFilter(rateLimitService, objectMapper), CorsFilter.class)
+                // Bearer tokens from /auth/token skip the BCrypt check basic auth pays every time
+                .addFilterBefore(new AdminTokenFilter(adminTokenService), BasicAuthenticationFilter.class)
+                // Retries with an Idempotency-Key get the first response back, only once they're let in
+                .addFilterAfter(new IdempotencyFilter(idempotencyService, objectMapper), AuthorizationFilter.class)
+                // A client's reads go to the primary for a moment after its own writes, not the lagging replica
+                .addFilterBefore(new ReadYourWritesFilter(readYourWritesWindow), AuthorizationFilter.class);
 
         return http.build();
 
@@ -59,6 +87,9 @@ public class SecurityConfig {
         config.addAllowedOrigin("https://chrisgreer.uk");
         config.addAllowedHeader("*");
         config.addAllowedMethod("*");
+        //So the admin page can read the paging cursor
+        config.addExposedHeader(BookingController.NEXT_CURSOR_HEADER);
+        config.addExposedHeader(IdempotencyFilter.REPLAYED_HEADER);
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", config);
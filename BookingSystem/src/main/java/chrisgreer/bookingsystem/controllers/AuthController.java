@@ -0,0 +1,23 @@
+package chrisgreer.bookingsystem.controllers;
+
+import chrisgreer.bookingsystem.dtos.AdminTokenDto;
+import chrisgreer.bookingsystem.services.AdminTokenService;
+import lombok.AllArgsConstructor;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@AllArgsConstructor
+public class AuthController {
+
+    public static final String TOKEN_PATH = "/auth/token";
+
+    private final AdminTokenService adminTokenService;
+
+    //Behind httpBasic, so this is the one BCrypt check a dashboard session pays
+    @PostMapping(TOKEN_PATH)
+    public AdminTokenDto issueToken(Authentication authentication){
+        return adminTokenService.issue(authentication.getName());
+    }
+}
@@ -1,34 +1,158 @@
 package chrisgreer.bookingsystem.controllers;
 
 import chrisgreer.bookingsystem.dtos.BookingDto;
+import chrisgreer.bookingsystem.dtos.CacheStatsDto;
 import chrisgreer.bookingsystem.dtos.CreateAvailableSlotDto;
+import chrisgreer.bookingsystem.dtos.CreateRecurringSlotsDto;
 import chrisgreer.bookingsystem.dtos.RequestBookingDto;
+import chrisgreer.bookingsystem.dtos.SlotGenerationResultDto;
+import chrisgreer.bookingsystem.dtos.SlowQueryDto;
 import chrisgreer.bookingsystem.dtos.UpdateBookingStatusDto;
 import chrisgreer.bookingsystem.mappers.BookingMapper;
 import chrisgreer.bookingsystem.model.BookingStatus;
+import chrisgreer.bookingsystem.model.ExportFormat;
 import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.services.AvailableSlotsCache;
+import chrisgreer.bookingsystem.services.BookingExportService;
 import chrisgreer.bookingsystem.services.BookingService;
 import chrisgreer.bookingsystem.services.EmailService;
+import chrisgreer.bookingsystem.services.RecurringSlotService;
+import chrisgreer.bookingsystem.services.SlotEventBroadcaster;
+import chrisgreer.bookingsystem.services.SlowQueryLog;
+import chrisgreer.bookingsystem.web.ConditionalGet;
 import chrisgreer.bookingsystem.web.ResponseMapper;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/booking")
 @AllArgsConstructor
 public class BookingController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final BookingService bookingService;
+    private final AvailableSlotsCache availableSlotsCache;
+    private final BookingExportService bookingExportService;
+    private final RecurringSlotService recurringSlotService;
+    private final SlotEventBroadcaster slotEventBroadcaster;
+    private final SlowQueryLog slowQueryLog;
 
     @GetMapping("/public")
-    public Iterable<BookingDto> getAvailableBookings(){
-        return bookingService.getAvailableBookings();
+    public ResponseEntity<?> getAvailableBookings(
+            @RequestParam(required = false, name = "from")
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+            LocalDate from,
+
+            @RequestParam(required = false, name = "to")
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+            LocalDate to,
+
+            ServletWebRequest request
+    ){
+        //A date range goes to the index, only the full list is worth keeping as a snapshot
+        if (from != null || to != null) {
+            var version = bookingService.getAvailableVersion(from, to);
+            if (ConditionalGet.notModified(request, version.etag(from + ".." + to),
+                    version.lastModifiedMillis(), ConditionalGet.PUBLIC)) return null;
+            return ResponseEntity.ok(bookingService.getAvailableBookings(from, to));
+        }
+
+        var snapshot = availableSlotsCache.get();
+
+        //Sets the 304 itself if the client's ETag still matches
+        if (ConditionalGet.notModified(request, snapshot.etag(), snapshot.lastModifiedMillis(),
+                ConditionalGet.PUBLIC)) return null;
+
+        //Gzipped once per snapshot, Tomcat leaves a response alone once it has a Content-Encoding
+        var response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (ConditionalGet.acceptsGzip(request)) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.gzip());
+        }
+        return response.body(snapshot.json());
+    }
+
+    @GetMapping(path = "/public/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamSlotChanges(){
+        //This node is full, the client should back off and try again (or fall back to polling)
+        return slotEventBroadcaster.subscribe()
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "30")
+                        .build());
+    }
+
+    @GetMapping("/public/summary")
+    public Map<LocalDate, Long> getAvailabilitySummary(
+            @RequestParam(required = false, name = "from")
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+            LocalDate from,
+
+            @RequestParam(required = false, name = "to")
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+            LocalDate to
+    ){
+        return bookingService.getAvailabilitySummary(from, to);
+    }
+
+    @GetMapping("/admin/export")
+    public void exportBookings(
+            @RequestParam(required = false, defaultValue = "ndjson", name = "format")
+            String format,
+
+            @RequestParam(required = false, defaultValue = "false", name = "showDeleted")
+            boolean deleted,
+
+            HttpServletResponse response
+    ) throws IOException {
+
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "format must be ndjson or csv");
+            return;
+        }
+
+        //Rows are written as they're read, so no Content-Length and nothing buffered here
+        boolean csv = exportFormat == ExportFormat.CSV;
+        response.setContentType(csv ? "text/csv" : "application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"bookings." + (csv ? "csv" : "ndjson") + "\"");
+
+        bookingExportService.export(exportFormat, deleted, response.getOutputStream());
+    }
+
+    @GetMapping("/admin/cache")
+    public CacheStatsDto getPublicCacheStats(){
+        return availableSlotsCache.stats();
+    }
+
+    //Slowest first, with their plans (this node only)
+    @GetMapping("/admin/slow-queries")
+    public List<SlowQueryDto> getSlowQueries(){
+        return slowQueryLog.slowest();
     }
 
     @GetMapping("/admin")
-    public Iterable<BookingDto> getBookings(
+    public ResponseEntity<Iterable<BookingDto>> getBookings(
             @RequestParam(required = false, defaultValue = "", name = "sort")
             String sort,
 
@@ -39,18 +163,45 @@ public class BookingController {
             boolean deleted,
 
             @RequestParam(required = false, defaultValue = "false", name = "showPast")
-            boolean showPast
+            boolean showPast,
+
+            @RequestParam(required = false, name = "after")
+            String after,
+
+            @RequestParam(required = false, name = "limit")
+            Integer limit,
+
+            ServletWebRequest request
 
     ){
-        return bookingService.getBookings(sort, status, deleted, showPast);
+        //Probe first, an unchanged page is a 304 without running the listing or serialising it
+        var version = bookingService.getBookingsVersion(status, deleted, showPast);
+        String variant = String.join("|", sort, String.valueOf(after), String.valueOf(limit));
+        if (ConditionalGet.notModified(request, version.etag(variant), version.lastModifiedMillis(),
+                ConditionalGet.PRIVATE)) return null;
+
+        var page = bookingService.getBookings(sort, status, deleted, showPast, after, limit);
+
+        //Body stays a plain array, the cursor for the next page goes in a header
+        var response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        return response.body(page.getBookings());
     }
 
     @PostMapping("/admin")
-    public ResponseEntity<Void> createBooking(
+    public ResponseEntity<BookingDto> createBooking(
             @RequestBody @Valid CreateAvailableSlotDto dto
     ){
-        bookingService.createBooking(dto);
-        return ResponseEntity.noContent().build();
+        //409 comes back with the slot it clashed with
+        var created = bookingService.createBooking(dto);
+        return ResponseMapper.toResponse(created.result(), created.conflict());
+    }
+
+    @PostMapping("/admin/recurring")
+    public SlotGenerationResultDto createRecurringSlots(
+            @RequestBody @Valid CreateRecurringSlotsDto dto
+    ){
+        return recurringSlotService.generate(dto);
     }
 
     @PatchMapping("/request/{id}")
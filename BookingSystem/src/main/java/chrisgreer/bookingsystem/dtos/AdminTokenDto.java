@@ -0,0 +1,17 @@
+package chrisgreer.bookingsystem.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+@Getter
+@AllArgsConstructor
+public class AdminTokenDto {
+
+    private String token;
+    private String tokenType;
+    private long expiresIn;
+    private Instant expiresAt;
+
+}
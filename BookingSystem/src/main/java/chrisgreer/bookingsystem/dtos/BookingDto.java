@@ -2,13 +2,16 @@ package chrisgreer.bookingsystem.dtos;
 
 
 import chrisgreer.bookingsystem.model.BookingStatus;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.time.OffsetDateTime;
 
+//Built straight from the columns by BookingRepository's read queries (and by the mapper), field order matters
 @Getter
 @Setter
+@AllArgsConstructor
 public class BookingDto {
 
     private Long id;
@@ -0,0 +1,17 @@
+package chrisgreer.bookingsystem.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class BookingPageDto {
+
+    private List<BookingDto> bookings;
+
+    //Null when this is the last page
+    private String nextCursor;
+
+}
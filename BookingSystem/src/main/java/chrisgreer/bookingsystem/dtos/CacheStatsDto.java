@@ -0,0 +1,15 @@
+package chrisgreer.bookingsystem.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class CacheStatsDto {
+
+    private long version;
+    private long hits;
+    private long misses;
+    private int sizeBytes;
+
+}
@@ -0,0 +1,43 @@
+package chrisgreer.bookingsystem.dtos;
+
+import chrisgreer.bookingsystem.validation.ValidDayRange;
+import jakarta.validation.constraints.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Set;
+
+/// e.g. Mon-Fri 09:00-17:00, 30 minute slots, for the next 12 weeks in Europe/London
+@Getter
+@Setter
+@ValidDayRange
+public class CreateRecurringSlotsDto {
+
+    @NotEmpty(message = "At least one day of the week is required")
+    private Set<DayOfWeek> daysOfWeek;
+
+    @NotNull(message = "Day start time is required")
+    private LocalTime dayStart;
+
+    @NotNull(message = "Day end time is required")
+    private LocalTime dayEnd;
+
+    @Min(value = 5, message = "Slots must be at least 5 minutes")
+    @Max(value = 480, message = "Slots can be at most 8 hours")
+    private int slotMinutes = 30;
+
+    //Defaults to today
+    @FutureOrPresent(message = "Start date can't be in the past")
+    private LocalDate startDate;
+
+    @Min(value = 1, message = "Must cover at least one week")
+    @Max(value = 52, message = "Can cover at most 52 weeks")
+    private int weeks = 12;
+
+    @NotBlank(message = "Time zone is required")
+    private String timeZone = "Europe/London";
+
+}
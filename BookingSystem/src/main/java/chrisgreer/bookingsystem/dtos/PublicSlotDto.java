@@ -0,0 +1,17 @@
+package chrisgreer.bookingsystem.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.OffsetDateTime;
+
+/// What the public calendar needs of a slot, nobody's contact details
+@Getter
+@AllArgsConstructor
+public class PublicSlotDto {
+
+    private Long id;
+    private OffsetDateTime startTime;
+    private OffsetDateTime endTime;
+
+}
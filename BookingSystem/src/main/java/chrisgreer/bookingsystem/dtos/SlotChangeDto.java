@@ -0,0 +1,19 @@
+package chrisgreer.bookingsystem.dtos;
+
+import chrisgreer.bookingsystem.model.BookingChange;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.OffsetDateTime;
+
+@Getter
+@AllArgsConstructor
+public class SlotChangeDto {
+
+    //Null when many slots changed at once, refetch startTime..endTime
+    private Long id;
+    private BookingChange change;
+    private OffsetDateTime startTime;
+    private OffsetDateTime endTime;
+
+}
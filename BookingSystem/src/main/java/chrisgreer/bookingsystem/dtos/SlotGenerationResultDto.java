@@ -0,0 +1,15 @@
+package chrisgreer.bookingsystem.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class SlotGenerationResultDto {
+
+    private int created;
+
+    //Overlapped an existing slot or already in the past
+    private int skipped;
+
+}
@@ -0,0 +1,20 @@
+package chrisgreer.bookingsystem.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+@Getter
+@AllArgsConstructor
+public class SlowQueryDto {
+
+    private String sql;
+    //From the slowest run, the one the plan is for
+    private String parameters;
+    private long elapsedMillis;
+    private long timesSlow;
+    private Instant lastSeenAt;
+    private String plan;
+
+}
@@ -16,8 +16,12 @@ import static chrisgreer.bookingsystem.model.BookingStatus.AVAILABLE;
 @Setter
 public class Booking {
 
+    //Exclusion constraint keeping live slots from overlapping (V12)
+    public static final String NO_OVERLAP_CONSTRAINT = "booking_no_overlap";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "booking_id_seq")
+    @SequenceGenerator(name = "booking_id_seq", sequenceName = "booking_id_seq", allocationSize = 50)
     @Column(name = "id")
     private Long id;
 
@@ -54,4 +58,8 @@ public class Booking {
 
     private boolean deleted = false;
 
+    //Stamped by the database on every insert and update (V7, V14), never written from here
+    @Column(name = "last_modified_at", insertable = false, updatable = false)
+    private OffsetDateTime lastModifiedAt;
+
 }
@@ -0,0 +1,61 @@
+package chrisgreer.bookingsystem.entities;
+
+import chrisgreer.bookingsystem.model.BookingStatus;
+import jakarta.persistence.*;
+import lombok.Getter;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Synchronize;
+
+import java.time.OffsetDateTime;
+
+/// Read-only view over the hot booking table and booking_archive together (V15).
+/// Only used for listings that reach into the past or the deleted rows, everything else reads Booking.
+/// Synchronize tells Hibernate the view reads those tables, so pending Booking changes are flushed before a query.
+@Entity
+@Immutable
+@Synchronize({"booking", "booking_archive"})
+@Table(name = "booking_history")
+@Getter
+public class BookingHistory {
+
+    @Id
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "name")
+    private String name;
+
+    @Column(name = "email")
+    private String email;
+
+    @Column(name = "phone_number")
+    private String phone;
+
+    @Column(name = "topic")
+    private String topic;
+
+    @Column(name = "notes")
+    private String notes;
+
+    @Column(name = "start_time")
+    private OffsetDateTime startTime;
+
+    @Column(name = "end_time")
+    private OffsetDateTime endTime;
+
+    @Column(name = "time_zone")
+    private String timeZone;
+
+    @Column(name = "status")
+    @Enumerated(EnumType.STRING)
+    private BookingStatus status;
+
+    @Column(name = "created_at")
+    private OffsetDateTime createdAt;
+
+    private boolean deleted;
+
+    @Column(name = "last_modified_at")
+    private OffsetDateTime lastModifiedAt;
+
+}
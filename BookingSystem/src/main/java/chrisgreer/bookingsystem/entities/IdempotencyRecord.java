@@ -0,0 +1,40 @@
+package chrisgreer.bookingsystem.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+
+/// A stored response for an Idempotency-Key (V17), only ever written through IdempotencyKeyRepository's queries
+@Entity
+@Table(name = "idempotency_key")
+@Getter
+@NoArgsConstructor
+public class IdempotencyRecord {
+
+    @Id
+    @Column(name = "idempotency_key")
+    private String key;
+
+    //Method and path the key was first used for
+    @Column(name = "request")
+    private String request;
+
+    //Null while the first request is still running
+    @Column(name = "status")
+    private Integer status;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Column(name = "body")
+    private byte[] body;
+
+    @Column(name = "created_at")
+    private OffsetDateTime createdAt;
+
+    @Column(name = "expires_at")
+    private OffsetDateTime expiresAt;
+
+}
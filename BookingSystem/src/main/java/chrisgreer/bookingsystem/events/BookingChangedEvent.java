@@ -0,0 +1,20 @@
+package chrisgreer.bookingsystem.events;
+
+import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.model.BookingChange;
+
+import java.time.OffsetDateTime;
+
+/// Published by BookingService whenever a booking row is created, modified or removed.
+/// A null bookingId covers many rows at once (a recurring run), the times then span all of them.
+public record BookingChangedEvent(
+        Long bookingId,
+        BookingChange change,
+        OffsetDateTime startTime,
+        OffsetDateTime endTime
+) {
+
+    public static BookingChangedEvent of(Booking booking, BookingChange change) {
+        return new BookingChangedEvent(booking.getId(), change, booking.getStartTime(), booking.getEndTime());
+    }
+}
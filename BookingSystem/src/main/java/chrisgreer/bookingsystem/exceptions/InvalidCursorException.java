@@ -0,0 +1,9 @@
+package chrisgreer.bookingsystem.exceptions;
+
+public class InvalidCursorException extends RuntimeException {
+
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,9 @@
+package chrisgreer.bookingsystem.exceptions;
+
+public class InvalidDateRangeException extends RuntimeException {
+
+    public InvalidDateRangeException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,13 @@
+package chrisgreer.bookingsystem.model;
+
+/// What a BookingChangedEvent did to the slot, as far as the public calendar is concerned
+public enum BookingChange {
+    CREATED,
+    //Stopped being AVAILABLE
+    CLAIMED,
+    //Back to AVAILABLE
+    RELEASED,
+    DELETED,
+    //Any other status change, invisible to the public list
+    UPDATED
+}
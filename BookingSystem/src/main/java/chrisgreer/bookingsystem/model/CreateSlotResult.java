@@ -0,0 +1,7 @@
+package chrisgreer.bookingsystem.model;
+
+import chrisgreer.bookingsystem.dtos.BookingDto;
+
+/// Outcome of creating a slot, with the slot it clashed with on CONFLICT
+public record CreateSlotResult(ServiceResult result, BookingDto conflict) {
+}
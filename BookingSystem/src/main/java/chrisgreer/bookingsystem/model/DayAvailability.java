@@ -0,0 +1,12 @@
+package chrisgreer.bookingsystem.model;
+
+import java.time.LocalDate;
+
+/// One row of the per-day availability summary
+public interface DayAvailability {
+
+    LocalDate getDay();
+
+    long getAvailable();
+
+}
@@ -0,0 +1,6 @@
+package chrisgreer.bookingsystem.model;
+
+public enum ExportFormat {
+    NDJSON,
+    CSV
+}
@@ -0,0 +1,5 @@
+package chrisgreer.bookingsystem.model;
+
+/// What a mutation answered the first time its Idempotency-Key was used, replayed as is on retries
+public record IdempotentResponse(String request, int status, String contentType, byte[] body, long expiresAtMillis) {
+}
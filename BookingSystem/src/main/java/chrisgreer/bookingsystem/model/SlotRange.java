@@ -0,0 +1,7 @@
+package chrisgreer.bookingsystem.model;
+
+import java.time.OffsetDateTime;
+
+/// Just the time range of a slot, id is null for one not saved yet
+public record SlotRange(Long id, OffsetDateTime startTime, OffsetDateTime endTime) {
+}
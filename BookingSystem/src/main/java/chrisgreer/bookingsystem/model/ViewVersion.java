@@ -0,0 +1,21 @@
+package chrisgreer.bookingsystem.model;
+
+import java.time.OffsetDateTime;
+
+/// Cheap fingerprint of a listing: the newest last_modified_at in it and how many rows it has.
+/// Inserts and updates move the max, rows leaving the view (deletes, claims, slots passing) move the count.
+public record ViewVersion(OffsetDateTime lastModified, long count) {
+
+    /// Weak, since the same version can go out gzipped or not.
+    /// The variant (sort, cursor, page size...) keeps different pages of one view apart
+    public String etag(String variant) {
+        long micros = lastModified == null ? 0
+                : lastModified.toEpochSecond() * 1_000_000 + lastModified.getNano() / 1_000;
+        return "W/\"" + count + "-" + micros + "-" + Integer.toHexString(variant.hashCode()) + "\"";
+    }
+
+    /// -1 (no header) for an empty view
+    public long lastModifiedMillis() {
+        return lastModified == null ? -1 : lastModified.toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,64 @@
+package chrisgreer.bookingsystem.repositories;
+
+import chrisgreer.bookingsystem.dtos.BookingDto;
+import chrisgreer.bookingsystem.entities.BookingHistory;
+import chrisgreer.bookingsystem.model.BookingStatus;
+import chrisgreer.bookingsystem.model.ViewVersion;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
+
+import java.time.OffsetDateTime;
+import java.util.stream.Stream;
+
+/// Same reads as BookingRepository's admin listing, probe and export, but over booking_history
+/// (hot table plus archive). Postgres pushes the filters into both halves of the UNION ALL,
+/// and merges the two ordered index scans for a keyset page.
+public interface BookingHistoryRepository extends Repository<BookingHistory, Long> {
+
+    Window<BookingDto> findByDeleted(
+            boolean deleted, ScrollPosition position, Sort sort, Limit limit);
+
+    Window<BookingDto> findByDeletedAndStatus(
+            boolean deleted, BookingStatus status, ScrollPosition position, Sort sort, Limit limit);
+
+    Window<BookingDto> findByDeletedAndStartTimeAfter(
+            boolean deleted, OffsetDateTime after, ScrollPosition position, Sort sort, Limit limit);
+
+    Window<BookingDto> findByDeletedAndStatusAndStartTimeAfter(
+            boolean deleted, BookingStatus status, OffsetDateTime after,
+            ScrollPosition position, Sort sort, Limit limit);
+
+    //Archiving moves rows without touching last_modified_at, so it doesn't change a view's version
+    @Query("""
+    SELECT new chrisgreer.bookingsystem.model.ViewVersion(max(b.lastModifiedAt), count(b))
+    FROM BookingHistory b
+    WHERE b.deleted = :deleted
+      AND (:status IS NULL OR b.status = :status)
+      AND (CAST(:after AS OffsetDateTime) IS NULL OR b.startTime > :after)
+    """)
+    ViewVersion probeBookings(
+            @Param("deleted") boolean deleted,
+            @Param("status") BookingStatus status,
+            @Param("after") OffsetDateTime after
+    );
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("""
+    SELECT new chrisgreer.bookingsystem.dtos.BookingDto(
+        b.id, b.name, b.email, b.phone, b.startTime, b.endTime, b.topic, b.notes, b.status)
+    FROM BookingHistory b WHERE b.deleted = :deleted ORDER BY b.id
+    """)
+    Stream<BookingDto> streamAllByDeleted(@Param("deleted") boolean deleted);
+
+}
@@ -1,34 +1,232 @@
 package chrisgreer.bookingsystem.repositories;
 
+import chrisgreer.bookingsystem.dtos.BookingDto;
+import chrisgreer.bookingsystem.dtos.PublicSlotDto;
 import chrisgreer.bookingsystem.entities.Booking;
 import chrisgreer.bookingsystem.model.BookingStatus;
+import chrisgreer.bookingsystem.model.DayAvailability;
+import chrisgreer.bookingsystem.model.SlotRange;
+import chrisgreer.bookingsystem.model.ViewVersion;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface BookingRepository extends JpaRepository<Booking, Long> {
 
-    List<Booking> findAllByStatus(BookingStatus status, Sort by);
-    List<Booking> findAllByDeletedAndStatus(boolean deleted, BookingStatus status, Sort by);
-    List<Booking> findAllByDeleted(boolean deleted, Sort by);
+    //Read models: the DTOs are built from just the columns they need, nothing lands in the persistence context.
+    //Literal status/deleted so the SQL still matches the partial index idx_booking_available_start
+    @Query("""
+    SELECT new chrisgreer.bookingsystem.dtos.PublicSlotDto(b.id, b.startTime, b.endTime)
+    FROM Booking b
+    WHERE b.status = chrisgreer.bookingsystem.model.BookingStatus.AVAILABLE AND b.deleted = false
+      AND b.startTime > :from
+    ORDER BY b.startTime
+    """)
+    List<PublicSlotDto> findAvailableStartingAfter(@Param("from") OffsetDateTime from);
 
+    @Query("""
+    SELECT new chrisgreer.bookingsystem.dtos.PublicSlotDto(b.id, b.startTime, b.endTime)
+    FROM Booking b
+    WHERE b.status = chrisgreer.bookingsystem.model.BookingStatus.AVAILABLE AND b.deleted = false
+      AND b.startTime >= :from AND b.startTime < :to
+    ORDER BY b.startTime
+    """)
+    List<PublicSlotDto> findAvailableStartingBetween(
+            @Param("from") OffsetDateTime from,
+            @Param("to") OffsetDateTime to
+    );
+
+    //Version probes for conditional GETs, each covers exactly the rows of the listing it stands for
+    @Query("""
+    SELECT new chrisgreer.bookingsystem.model.ViewVersion(max(b.lastModifiedAt), count(b))
+    FROM Booking b
+    WHERE b.status = chrisgreer.bookingsystem.model.BookingStatus.AVAILABLE AND b.deleted = false
+      AND b.startTime > :from
+    """)
+    ViewVersion probeAvailableStartingAfter(@Param("from") OffsetDateTime from);
+
+    @Query("""
+    SELECT new chrisgreer.bookingsystem.model.ViewVersion(max(b.lastModifiedAt), count(b))
+    FROM Booking b
+    WHERE b.status = chrisgreer.bookingsystem.model.BookingStatus.AVAILABLE AND b.deleted = false
+      AND b.startTime >= :from AND b.startTime < :to
+    """)
+    ViewVersion probeAvailableStartingBetween(
+            @Param("from") OffsetDateTime from,
+            @Param("to") OffsetDateTime to
+    );
+
+    //Null status or after means that filter isn't applied, as in BookingService.getBookings
+    @Query("""
+    SELECT new chrisgreer.bookingsystem.model.ViewVersion(max(b.lastModifiedAt), count(b))
+    FROM Booking b
+    WHERE b.deleted = :deleted
+      AND (:status IS NULL OR b.status = :status)
+      AND (CAST(:after AS OffsetDateTime) IS NULL OR b.startTime > :after)
+    """)
+    ViewVersion probeBookings(
+            @Param("deleted") boolean deleted,
+            @Param("status") BookingStatus status,
+            @Param("after") OffsetDateTime after
+    );
+
+    //Grouped by calendar day in the given zone, days with nothing free are left out
     @Query(value = """
-    SELECT * FROM booking WHERE deleted = :deleted AND status = :status AND start_time > NOW() ORDER BY start_time
+    SELECT CAST(start_time AT TIME ZONE :zone AS date) AS day, COUNT(*) AS available
+    FROM booking
+    WHERE status = 'AVAILABLE' AND deleted = false AND start_time >= :from AND start_time < :to
+    GROUP BY day
+    ORDER BY day
     """, nativeQuery = true)
-    List<Booking> findFutureFilterStatus(
-            @Param("deleted") boolean deleted,
-            @Param("status") String status
+    List<DayAvailability> countAvailableByDay(
+            @Param("from") OffsetDateTime from,
+            @Param("to") OffsetDateTime to,
+            @Param("zone") String zone
+    );
+
+    //Check and claim in one statement, so two requesters can't both see AVAILABLE
+    @Query(value = """
+    UPDATE booking
+    SET name = :name, email = :email, phone_number = :phone, topic = :topic, notes = :notes, status = 'PENDING'
+    WHERE id = :id AND status = 'AVAILABLE' AND deleted = false
+    RETURNING *
+    """, nativeQuery = true)
+    Optional<Booking> claimAvailable(
+            @Param("id") Long id,
+            @Param("name") String name,
+            @Param("email") String email,
+            @Param("phone") String phone,
+            @Param("topic") String topic,
+            @Param("notes") String notes
+    );
+
+    boolean existsByIdAndDeleted(Long id, boolean deleted);
+
+    Optional<Booking> findByIdAndDeleted(Long id, boolean deleted);
+
+    //Inserts only if it doesn't clash with a live slot (booking_no_overlap), otherwise nothing comes back
+    @Query(value = """
+    INSERT INTO booking (start_time, end_time, status)
+    VALUES (:startTime, :endTime, 'AVAILABLE')
+    ON CONFLICT DO NOTHING
+    RETURNING *
+    """, nativeQuery = true)
+    Optional<Booking> insertIfFree(
+            @Param("startTime") OffsetDateTime startTime,
+            @Param("endTime") OffsetDateTime endTime
     );
 
+    //Same range expression as booking_no_overlap, so it uses that constraint's GiST index
     @Query(value = """
-    SELECT * FROM booking WHERE deleted = :deleted AND start_time > NOW() ORDER BY start_time
+    SELECT * FROM booking
+    WHERE deleted = false
+      AND tstzrange(start_time, end_time, '[)')
+          && tstzrange(CAST(:startTime AS timestamptz), CAST(:endTime AS timestamptz), '[)')
+    ORDER BY start_time
+    LIMIT 1
     """, nativeQuery = true)
-    List<Booking> findFuture(@Param("deleted") boolean deleted);
+    Optional<Booking> findFirstOverlapping(
+            @Param("startTime") OffsetDateTime startTime,
+            @Param("endTime") OffsetDateTime endTime
+    );
+
+    @Query("""
+    SELECT new chrisgreer.bookingsystem.model.SlotRange(b.id, b.startTime, b.endTime)
+    FROM Booking b WHERE b.deleted = false AND b.endTime > :after
+    """)
+    List<SlotRange> findLiveRangesEndingAfter(@Param("after") OffsetDateTime after);
+
+    //Reminders (ReminderService)
+    @Query("""
+    SELECT new chrisgreer.bookingsystem.model.SlotRange(b.id, b.startTime, b.endTime)
+    FROM Booking b
+    WHERE b.status = chrisgreer.bookingsystem.model.BookingStatus.CONFIRMED AND b.deleted = false
+      AND b.startTime > :after
+    """)
+    List<SlotRange> findConfirmedStartingAfter(@Param("after") OffsetDateTime after);
+
+    //Records the reminder as sent and hands back the booking, only if it's still confirmed and upcoming
+    //and nobody sent this reminder before. Nothing comes back otherwise
+    @Query(value = """
+    WITH claimed AS (
+        INSERT INTO booking_reminder (booking_id, minutes_before)
+        SELECT id, :minutesBefore FROM booking
+        WHERE id = :id AND status = 'CONFIRMED' AND deleted = false AND start_time > now()
+        ON CONFLICT DO NOTHING
+        RETURNING booking_id
+    )
+    SELECT b.* FROM booking b JOIN claimed c ON c.booking_id = b.id
+    """, nativeQuery = true)
+    Optional<Booking> claimReminder(@Param("id") Long id, @Param("minutesBefore") long minutesBefore);
+
+    //When a booking stops being confirmed, so confirming it again (maybe for someone else) gets reminders again
+    @Modifying
+    @Query(value = "DELETE FROM booking_reminder WHERE booking_id = :id", nativeQuery = true)
+    int forgetReminders(@Param("id") Long id);
+
+    //Nothing is claimed for a booking that has started, nor for one that's gone (archived)
+    @Modifying
+    @Query(value = """
+    DELETE FROM booking_reminder r
+    WHERE NOT EXISTS (SELECT 1 FROM booking b WHERE b.id = r.booking_id AND b.start_time > :now)
+    """, nativeQuery = true)
+    int deleteStartedReminders(@Param("now") OffsetDateTime now);
 
+    //Keyset scrolling for the admin listing, Spring Data appends id to the sort as a tie-breaker
+    //Returned as BookingDto, so Spring Data selects through its constructor rather than loading entities
+    Window<BookingDto> findByDeleted(
+            boolean deleted, ScrollPosition position, Sort sort, Limit limit);
+
+    Window<BookingDto> findByDeletedAndStatus(
+            boolean deleted, BookingStatus status, ScrollPosition position, Sort sort, Limit limit);
+
+    Window<BookingDto> findByDeletedAndStartTimeAfter(
+            boolean deleted, OffsetDateTime after, ScrollPosition position, Sort sort, Limit limit);
+
+    Window<BookingDto> findByDeletedAndStatusAndStartTimeAfter(
+            boolean deleted, BookingStatus status, OffsetDateTime after,
+            ScrollPosition position, Sort sort, Limit limit);
+
+    //Archiving (BookingArchiveService). Rows over by the cutoff, or deleted before it.
+    //start_time < cutoff is implied by end_time < cutoff, it's there so idx_booking_deleted_start_id is usable
+    @Query(value = """
+    SELECT DISTINCT CAST(EXTRACT(YEAR FROM start_time AT TIME ZONE 'UTC') AS int)
+    FROM booking
+    WHERE (start_time < :cutoff AND end_time < :cutoff) OR (deleted = true AND last_modified_at < :cutoff)
+    """, nativeQuery = true)
+    List<Integer> findArchiveYears(@Param("cutoff") OffsetDateTime cutoff);
+
+    //Delete and insert in one statement, a row is never in both tables or in neither
+    @Modifying
+    @Query(value = """
+    WITH moved AS (
+        DELETE FROM booking
+        WHERE id IN (
+            SELECT id FROM booking
+            WHERE (start_time < :cutoff AND end_time < :cutoff) OR (deleted = true AND last_modified_at < :cutoff)
+            ORDER BY id
+            LIMIT :batchSize
+            FOR UPDATE SKIP LOCKED
+        )
+        RETURNING *
+    )
+    INSERT INTO booking_archive (id, name, email, phone_number, topic, notes, start_time, end_time,
+                                 time_zone, status, created_at, last_modified_at, deleted)
+    SELECT id, name, email, phone_number, topic, notes, start_time, end_time,
+           time_zone, status, created_at, last_modified_at, deleted
+    FROM moved
+    """, nativeQuery = true)
+    int archiveBatch(@Param("cutoff") OffsetDateTime cutoff, @Param("batchSize") int batchSize);
 
 }
@@ -0,0 +1,64 @@
+package chrisgreer.bookingsystem.repositories;
+
+import chrisgreer.bookingsystem.entities.EmailOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
+
+    //Leases the batch by pushing next_attempt_at to :leasedUntil and commits straight away, so no row lock
+    //or connection is held while it's sent. SKIP LOCKED so two nodes never lease the same rows, and a
+    //node that dies mid-send leaves them to be picked up again once the lease runs out
+    @Transactional
+    @Query(value = """
+    WITH next AS (
+        SELECT id FROM email_outbox
+        WHERE sent_at IS NULL AND attempts < :maxAttempts AND next_attempt_at <= NOW()
+        ORDER BY id
+        LIMIT :limit
+        FOR UPDATE SKIP LOCKED
+    )
+    UPDATE email_outbox e SET next_attempt_at = :leasedUntil
+    FROM next WHERE e.id = next.id
+    RETURNING e.*
+    """, nativeQuery = true)
+    List<EmailOutbox> leaseNextBatch(
+            @Param("maxAttempts") int maxAttempts,
+            @Param("limit") int limit,
+            @Param("leasedUntil") OffsetDateTime leasedUntil
+    );
+
+    @Modifying
+    @Query(value = "UPDATE email_outbox SET sent_at = :sentAt, last_error = NULL WHERE id IN (:ids)", nativeQuery = true)
+    int markSent(@Param("ids") List<Long> ids, @Param("sentAt") OffsetDateTime sentAt);
+
+    @Modifying
+    @Query(value = """
+    UPDATE email_outbox SET attempts = :attempts, last_error = :lastError, next_attempt_at = :nextAttemptAt
+    WHERE id = :id
+    """, nativeQuery = true)
+    int markFailed(
+            @Param("id") Long id,
+            @Param("attempts") int attempts,
+            @Param("lastError") String lastError,
+            @Param("nextAttemptAt") OffsetDateTime nextAttemptAt
+    );
+
+    //Sent, or out of attempts, and past the retention period
+    @Transactional
+    @Modifying
+    @Query(value = """
+    DELETE FROM email_outbox
+    WHERE created_at < :before AND (sent_at IS NOT NULL OR attempts >= :maxAttempts)
+    """, nativeQuery = true)
+    int deleteFinished(@Param("before") OffsetDateTime before, @Param("maxAttempts") int maxAttempts);
+
+}
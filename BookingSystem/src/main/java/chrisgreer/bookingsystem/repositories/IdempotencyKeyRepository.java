@@ -0,0 +1,59 @@
+package chrisgreer.bookingsystem.repositories;
+
+import chrisgreer.bookingsystem.entities.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    //1 if this request now owns the key: it was free, or whatever held it has expired
+    @Transactional
+    @Modifying
+    @Query(value = """
+    INSERT INTO idempotency_key (idempotency_key, request, expires_at)
+    VALUES (:key, :request, :leaseUntil)
+    ON CONFLICT (idempotency_key) DO UPDATE
+        SET request = EXCLUDED.request, status = NULL, content_type = NULL, body = NULL,
+            created_at = now(), expires_at = EXCLUDED.expires_at
+        WHERE idempotency_key.expires_at < now()
+    """, nativeQuery = true)
+    int claim(
+            @Param("key") String key,
+            @Param("request") String request,
+            @Param("leaseUntil") OffsetDateTime leaseUntil
+    );
+
+    @Transactional
+    @Modifying
+    @Query(value = """
+    UPDATE idempotency_key
+    SET status = :status, content_type = :contentType, body = :body, expires_at = :expiresAt
+    WHERE idempotency_key = :key AND status IS NULL
+    """, nativeQuery = true)
+    int complete(
+            @Param("key") String key,
+            @Param("status") int status,
+            @Param("contentType") String contentType,
+            @Param("body") byte[] body,
+            @Param("expiresAt") OffsetDateTime expiresAt
+    );
+
+    //Lets the client retry straight away after a failure we don't want to replay
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM idempotency_key WHERE idempotency_key = :key AND status IS NULL", nativeQuery = true)
+    int release(@Param("key") String key);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM idempotency_key WHERE expires_at < :now", nativeQuery = true)
+    int deleteExpired(@Param("now") OffsetDateTime now);
+
+}
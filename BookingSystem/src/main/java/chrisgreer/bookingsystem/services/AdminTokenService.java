@@ -0,0 +1,102 @@
+package chrisgreer.bookingsystem.services;
+
+import chrisgreer.bookingsystem.dtos.AdminTokenDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+
+/// Short lived admin tokens, so BCrypt runs once per login rather than once per request.
+/// Format: base64url("expiry:username") + "." + base64url(HMAC-SHA256 of the first part)
+@Slf4j
+@Service
+public class AdminTokenService {
+
+    public static final String TOKEN_TYPE = "Bearer";
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_SECRET_BYTES = 32;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final Duration ttl;
+
+    public AdminTokenService(@Value("${admin.token.secret:}") String secret,
+                             @Value("${admin.token.ttl:15m}") Duration ttl,
+                             @Value("${admin.token.allow-random-secret:false}") boolean allowRandomSecret) {
+        this.key = new SecretKeySpec(secretBytes(secret, allowRandomSecret), ALGORITHM);
+        this.ttl = ttl;
+    }
+
+    public AdminTokenDto issue(String username) {
+        Instant expiresAt = Instant.now().plus(ttl);
+        String payload = ENCODER.encodeToString(
+                (expiresAt.getEpochSecond() + ":" + username).getBytes(StandardCharsets.UTF_8));
+        String token = payload + "." + ENCODER.encodeToString(sign(payload));
+        return new AdminTokenDto(token, TOKEN_TYPE, ttl.toSeconds(), expiresAt);
+    }
+
+    /// The username, if the signature matches and it hasn't expired
+    public Optional<String> verify(String token) {
+        int dot = token.lastIndexOf('.');
+        if (dot <= 0) return Optional.empty();
+
+        String payload = token.substring(0, dot);
+        byte[] signature;
+        try {
+            signature = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        //Constant time, so the signature can't be guessed a byte at a time
+        if (!MessageDigest.isEqual(sign(payload), signature)) return Optional.empty();
+
+        String claims = new String(DECODER.decode(payload), StandardCharsets.UTF_8);
+        int colon = claims.indexOf(':');
+        long expiry = Long.parseLong(claims.substring(0, colon));
+        if (Instant.now().getEpochSecond() >= expiry) return Optional.empty();
+
+        return Optional.of(claims.substring(colon + 1));
+    }
+
+    //Mac isn't thread safe, a fresh one per call is a couple of microseconds
+    private byte[] sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 unavailable", e);
+        }
+    }
+
+    //A random key only works for one process: tokens fail on every other machine and after a restart
+    private static byte[] secretBytes(String secret, boolean allowRandomSecret) {
+        if (secret == null || secret.isBlank()) {
+            if (!allowRandomSecret) {
+                throw new IllegalStateException("admin.token.secret (ADMIN_TOKEN_SECRET) must be set, "
+                        + "every machine has to sign tokens with the same key");
+            }
+            log.warn("admin.token.secret not set, using a random key for this process");
+            byte[] random = new byte[MIN_SECRET_BYTES];
+            new SecureRandom().nextBytes(random);
+            return random;
+        }
+        byte[] bytes = secret.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < MIN_SECRET_BYTES) {
+            throw new IllegalStateException("admin.token.secret must be at least " + MIN_SECRET_BYTES + " bytes");
+        }
+        return bytes;
+    }
+}
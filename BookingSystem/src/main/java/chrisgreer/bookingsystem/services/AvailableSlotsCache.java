@@ -0,0 +1,190 @@
+package chrisgreer.bookingsystem.services;
+
+import chrisgreer.bookingsystem.config.ReplicaRoutingDataSource;
+import chrisgreer.bookingsystem.dtos.CacheStatsDto;
+import chrisgreer.bookingsystem.dtos.PublicSlotDto;
+import chrisgreer.bookingsystem.events.BookingChangedEvent;
+import chrisgreer.bookingsystem.model.ViewVersion;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+/// Snapshot of GET /booking/public, held as the already encoded JSON (plain and gzipped).
+/// Reads are a single volatile load, rebuilds happen on the first read after a change.
+///
+/// Changes only reach this node's listener when they were made on this node. To catch the other
+/// nodes' changes, the snapshot's version probe (last_modified_at and count, as for conditional GETs)
+/// is re-run at most once per booking.public-cache.verify-interval, and a mismatch rebuilds. So
+/// another node's change can take up to that long (1s by default) to show here, never max-age.
+@Service
+@RequiredArgsConstructor
+public class AvailableSlotsCache implements MeterBinder {
+
+    private final BookingService bookingService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${booking.public-cache.max-age:5m}")
+    private Duration maxAge;
+
+    @Value("${booking.public-cache.verify-interval:1s}")
+    private Duration verifyInterval;
+
+    private final AtomicLong version = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicLong verifiedAtMillis = new AtomicLong();
+
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    private volatile Snapshot snapshot;
+
+    public record Snapshot(long version, ViewVersion rows, byte[] json, byte[] gzip, String etag,
+                           long lastModifiedMillis, long expiresAtMillis) { }
+
+    public Snapshot get() {
+        Snapshot current = snapshot;
+        if (isFresh(current) && matchesDatabase(current)) {
+            hits.increment();
+            return current;
+        }
+        return rebuild();
+    }
+
+    /// Only after commit, so a concurrent rebuild can't re-cache the old rows
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookingChanged(BookingChangedEvent event) {
+        invalidate();
+    }
+
+    public void invalidate() {
+        version.incrementAndGet();
+    }
+
+    public CacheStatsDto stats() {
+        Snapshot current = snapshot;
+        return new CacheStatsDto(
+                version.get(),
+                hits.sum(),
+                misses.sum(),
+                current != null ? current.json().length : 0
+        );
+    }
+
+    /// Same numbers as /booking/admin/cache, read at scrape time
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("booking.public.cache.requests", hits, LongAdder::sum)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("booking.public.cache.requests", misses, LongAdder::sum)
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("booking.public.cache.size", this, c -> c.stats().getSizeBytes())
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    //One thread probes per interval, the others keep serving the snapshot meanwhile
+    private boolean matchesDatabase(Snapshot s) {
+        long now = System.currentTimeMillis();
+        long verifiedAt = verifiedAtMillis.get();
+        if (now - verifiedAt < verifyInterval.toMillis() || !verifiedAtMillis.compareAndSet(verifiedAt, now)) {
+            return true;
+        }
+        //From the primary, as the snapshot itself
+        if (s.rows().equals(ReplicaRoutingDataSource.onPrimary(bookingService::getAvailableVersion))) return true;
+        invalidate();
+        return false;
+    }
+
+    private boolean isFresh(Snapshot s) {
+        return s != null
+                && s.version() == version.get()
+                && System.currentTimeMillis() < s.expiresAtMillis();
+    }
+
+    //Only one thread rebuilds, the rest wait and then pick up its snapshot.
+    //A lock rather than synchronized, so a virtual thread waiting on the query doesn't pin its carrier
+    private Snapshot rebuild() {
+        rebuildLock.lock();
+        try {
+            Snapshot current = snapshot;
+            if (isFresh(current)) {
+                hits.increment();
+                return current;
+            }
+            misses.increment();
+            return load();
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    private Snapshot load() {
+        //Read the version first, if a change lands mid-query the next read rebuilds again
+        long buildVersion = version.get();
+        //From the primary: the snapshot outlives any replica lag, and a stale one would be kept until max-age
+        var rowsVersion = ReplicaRoutingDataSource.onPrimary(bookingService::getAvailableVersion);
+        List<PublicSlotDto> slots = ReplicaRoutingDataSource.onPrimary(bookingService::getAvailableBookings);
+
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(slots);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialise available slots", e);
+        }
+
+        //Weak, the same content also goes out gzipped
+        Snapshot built = new Snapshot(
+                buildVersion,
+                rowsVersion,
+                json,
+                gzip(json),
+                "W/\"" + DigestUtils.md5DigestAsHex(json) + "\"",
+                rowsVersion.lastModifiedMillis(),
+                expiresAt(slots)
+        );
+        snapshot = built;
+        verifiedAtMillis.set(System.currentTimeMillis());
+        return built;
+    }
+
+    private static byte[] gzip(byte[] json) {
+        var out = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (var gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    //Slots are ordered by start time, the first one to pass drops out of the list
+    private long expiresAt(List<PublicSlotDto> slots) {
+        long expiry = System.currentTimeMillis() + maxAge.toMillis();
+        if (!slots.isEmpty()) {
+            OffsetDateTime firstStart = slots.get(0).getStartTime();
+            expiry = Math.min(expiry, firstStart.toInstant().toEpochMilli());
+        }
+        return expiry;
+    }
+}
@@ -0,0 +1,94 @@
+package chrisgreer.bookingsystem.services;
+
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/// Moves bookings that are over, or were deleted, out of the hot booking table into booking_archive,
+/// so the table every live query scans stays the size of what's actually upcoming.
+///
+/// Batches are their own transactions (SKIP LOCKED, so nodes running it at once share the work).
+/// Archived rows are read-only: the admin listing and export still see them through booking_history,
+/// but they can't be updated or deleted any more.
+@Slf4j
+@Service
+public class BookingArchiveService {
+
+    private final BookingRepository bookingRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ReentrantLock runLock = new ReentrantLock();
+    private final Set<Integer> partitions = ConcurrentHashMap.newKeySet();
+    private final Counter archivedCounter;
+
+    @Value("${booking.archive.batch-size:500}")
+    private int batchSize;
+
+    @Value("${booking.archive.retention:7d}")
+    private Duration retention;
+
+    public BookingArchiveService(BookingRepository bookingRepository,
+                                 JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry) {
+        this.bookingRepository = bookingRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.archivedCounter = Counter.builder("booking.archive.moved")
+                .description("Bookings moved from the hot table to booking_archive")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${booking.archive.interval:1h}",
+            initialDelayString = "${booking.archive.initial-delay:5m}")
+    public void archiveScheduled() {
+        archive();
+    }
+
+    /// Archives everything that ended, or was deleted, more than the retention ago. Returns how many rows moved.
+    public int archive() {
+        runLock.lock();
+        try {
+            var cutoff = OffsetDateTime.now().minus(retention);
+            bookingRepository.findArchiveYears(cutoff).forEach(this::ensurePartition);
+
+            int total = 0;
+            int moved;
+            do {
+                Integer batch = transactionTemplate.execute(s -> bookingRepository.archiveBatch(cutoff, batchSize));
+                moved = batch == null ? 0 : batch;
+                total += moved;
+            } while (moved == batchSize);
+
+            if (total > 0) {
+                archivedCounter.increment(total);
+                log.info("Archived {} booking(s) that ended or were deleted before {}", total, cutoff);
+            }
+            return total;
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    //One partition per UTC year. Its own statement, outside the move, since it locks booking_archive
+    private void ensurePartition(int year) {
+        if (partitions.contains(year)) return;
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS booking_archive_y" + year
+                + " PARTITION OF booking_archive FOR VALUES FROM ('" + year + "-01-01 00:00:00+00')"
+                + " TO ('" + (year + 1) + "-01-01 00:00:00+00')");
+        partitions.add(year);
+    }
+}
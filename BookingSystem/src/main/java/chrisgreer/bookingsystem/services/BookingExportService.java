@@ -0,0 +1,101 @@
+package chrisgreer.bookingsystem.services;
+
+import chrisgreer.bookingsystem.dtos.BookingDto;
+import chrisgreer.bookingsystem.model.ExportFormat;
+import chrisgreer.bookingsystem.repositories.BookingHistoryRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+
+/// Writes every booking straight to an output stream, one row at a time,
+/// so memory use doesn't depend on how many bookings there are
+@Service
+@RequiredArgsConstructor
+public class BookingExportService {
+
+    private static final String CSV_HEADER = "id,name,email,phone,startTime,endTime,topic,notes,status\n";
+    //A spreadsheet runs a cell starting with one of these as a formula, and name, phone, topic and notes
+    //come from anonymous requesters. Those get a ' in front, which shows as text
+    private static final String FORMULA_START = "=+-@\t\r";
+
+    private final BookingHistoryRepository historyRepository;
+    private final ObjectMapper objectMapper;
+
+    @Transactional(readOnly = true)
+    public long export(ExportFormat format, boolean deleted, OutputStream out) throws IOException {
+        var writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+        var rowWriter = format == ExportFormat.CSV ? csvRowWriter(writer) : ndjsonRowWriter(writer);
+
+        long rows = 0;
+        //Rows come back as DTOs, so there's nothing in the persistence context to detach as we go.
+        //Read through booking_history so archived bookings are still exported
+        try (var bookings = historyRepository.streamAllByDeleted(deleted)) {
+            var iterator = bookings.iterator();
+            while (iterator.hasNext()) {
+                rowWriter.write(iterator.next());
+                rows++;
+            }
+        }
+        writer.flush();
+        return rows;
+    }
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(BookingDto dto) throws IOException;
+    }
+
+    private RowWriter ndjsonRowWriter(Writer writer) {
+        //Don't let Jackson close or flush the response per row
+        ObjectWriter json = objectMapper.writer()
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        return dto -> {
+            json.writeValue(writer, dto);
+            writer.write('\n');
+        };
+    }
+
+    private RowWriter csvRowWriter(Writer writer) throws IOException {
+        writer.write(CSV_HEADER);
+        return dto -> {
+            writer.write(String.valueOf(dto.getId()));
+            writeCsvField(writer, dto.getName());
+            writeCsvField(writer, dto.getEmail());
+            writeCsvField(writer, dto.getPhone());
+            writeCsvField(writer, format(dto.getStartTime()));
+            writeCsvField(writer, format(dto.getEndTime()));
+            writeCsvField(writer, dto.getTopic());
+            writeCsvField(writer, dto.getNotes());
+            writeCsvField(writer, dto.getStatus() != null ? dto.getStatus().name() : null);
+            writer.write('\n');
+        };
+    }
+
+    //RFC 4180 quoting, only when the value needs it
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        writer.write(',');
+        if (value == null) return;
+        if (!value.isEmpty() && FORMULA_START.indexOf(value.charAt(0)) >= 0) value = "'" + value;
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static String format(OffsetDateTime dateTime) {
+        return dateTime != null ? dateTime.toString() : null;
+    }
+}
@@ -1,23 +1,44 @@
 package chrisgreer.bookingsystem.services;
 
 import chrisgreer.bookingsystem.dtos.BookingDto;
+import chrisgreer.bookingsystem.dtos.BookingPageDto;
 import chrisgreer.bookingsystem.dtos.CreateAvailableSlotDto;
+import chrisgreer.bookingsystem.dtos.PublicSlotDto;
 import chrisgreer.bookingsystem.dtos.RequestBookingDto;
 import chrisgreer.bookingsystem.dtos.UpdateBookingStatusDto;
 import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.events.BookingChangedEvent;
+import chrisgreer.bookingsystem.exceptions.InvalidDateRangeException;
 import chrisgreer.bookingsystem.mappers.BookingMapper;
+import chrisgreer.bookingsystem.model.BookingChange;
 import chrisgreer.bookingsystem.model.BookingStatus;
+import chrisgreer.bookingsystem.model.CreateSlotResult;
 import chrisgreer.bookingsystem.model.ServiceResult;
+import chrisgreer.bookingsystem.model.ViewVersion;
+import chrisgreer.bookingsystem.repositories.BookingHistoryRepository;
 import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.utils.DateTimeUtil;
+import chrisgreer.bookingsystem.utils.KeysetCursor;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import static chrisgreer.bookingsystem.model.BookingStatus.*;
 
@@ -26,57 +47,170 @@ import static chrisgreer.bookingsystem.model.BookingStatus.*;
 public class BookingService {
 
     private final BookingRepository bookingRepository;
+    private final BookingHistoryRepository historyRepository;
     private final EmailService emailService;
     private final BookingMapper bookingMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EntityManager entityManager;
+    private final MeterRegistry meterRegistry;
+    private final SlotIndexService slotIndex;
 
     private static final Set<String> SORT_FIELDS
             = Set.of("id", "status", "startTime");
     public static final String DEFAULT_SORT = "id";
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 500;
+    public static final String CONFLICTS_METRIC = "booking.conflicts";
 
-    public Iterable<BookingDto> getAvailableBookings(){
-        return bookingRepository
-                .findFutureFilterStatus(false, AVAILABLE.name())
-                .stream().map(bookingMapper::toDto).toList();
+    @Value("${booking.public.max-range-days:92}")
+    private int maxRangeDays;
+
+    @Transactional(readOnly = true)
+    public List<PublicSlotDto> getAvailableBookings(){
+        return bookingRepository.findAvailableStartingAfter(OffsetDateTime.now());
+    }
+
+    /// Available slots starting on the days from..to (inclusive, London time)
+    @Transactional(readOnly = true)
+    public List<PublicSlotDto> getAvailableBookings(LocalDate from, LocalDate to){
+        var range = resolveRange(from, to);
+        return bookingRepository.findAvailableStartingBetween(range.from(), range.to());
+    }
+
+    /// Version probes: one aggregate row, for answering conditional GETs without loading the listing.
+    /// Read-only like the listings, so both come from the same pool
+    @Transactional(readOnly = true)
+    public ViewVersion getAvailableVersion(){
+        return bookingRepository.probeAvailableStartingAfter(OffsetDateTime.now());
+    }
+
+    @Transactional(readOnly = true)
+    public ViewVersion getAvailableVersion(LocalDate from, LocalDate to){
+        var range = resolveRange(from, to);
+        return bookingRepository.probeAvailableStartingBetween(range.from(), range.to());
+    }
+
+    @Transactional(readOnly = true)
+    public ViewVersion getBookingsVersion(BookingStatus status, boolean deleted, boolean showPast){
+        var after = showPast ? null : OffsetDateTime.now();
+        return readsArchive(deleted, showPast)
+                ? historyRepository.probeBookings(deleted, status, after)
+                : bookingRepository.probeBookings(deleted, status, after);
+    }
+
+    //Live upcoming bookings are never archived, anything else may have been
+    private static boolean readsArchive(boolean deleted, boolean showPast){
+        return deleted || showPast;
+    }
+
+    /// Number of available slots per day, for drawing the month grid without the slots themselves
+    @Transactional(readOnly = true)
+    public Map<LocalDate, Long> getAvailabilitySummary(LocalDate from, LocalDate to){
+        var range = resolveRange(from, to);
+        var days = new TreeMap<LocalDate, Long>();
+        bookingRepository
+                .countAvailableByDay(range.from(), range.to(), DateTimeUtil.LONDON_ZONE.getId())
+                .forEach(d -> days.put(d.getDay(), d.getAvailable()));
+        return days;
+    }
+
+    private record DayRange(OffsetDateTime from, OffsetDateTime to) { }
+
+    //Defaults to a month from today, never reaches into the past
+    private DayRange resolveRange(LocalDate from, LocalDate to){
+        if (from == null) from = DateTimeUtil.today();
+        if (to == null) to = from.plusMonths(1).minusDays(1);
+        if (to.isBefore(from)) throw new InvalidDateRangeException("to must not be before from");
+        if (ChronoUnit.DAYS.between(from, to) >= maxRangeDays) {
+            throw new InvalidDateRangeException("Range can be at most " + maxRangeDays + " days");
+        }
+
+        var now = OffsetDateTime.now();
+        var start = DateTimeUtil.startOfDay(from);
+        return new DayRange(start.isBefore(now) ? now : start, DateTimeUtil.startOfDay(to.plusDays(1)));
     }
 
-    public Iterable<BookingDto> getBookings(String sort,
-                                            BookingStatus status,
-                                            boolean deleted,
-                                            boolean showPast){
+    @Transactional(readOnly = true)
+    public BookingPageDto getBookings(String sort,
+                                      BookingStatus status,
+                                      boolean deleted,
+                                      boolean showPast,
+                                      String after,
+                                      Integer limit){
 
         if(!SORT_FIELDS.contains(sort)) sort = DEFAULT_SORT;
+        int pageSize = (limit == null || limit < 1) ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+
+        var position = KeysetCursor.decode(after, sort);
+        var by = Sort.by(sort);
+        var pageLimit = Limit.of(pageSize);
 
-        List<Booking> bookings;
-        if (showPast) {
-            bookings = (status != null)
-                    ? bookingRepository.findAllByDeletedAndStatus(deleted, status, Sort.by(sort))
-                    : bookingRepository.findAllByDeleted(deleted, Sort.by(sort));
+        Window<BookingDto> window;
+        if (!readsArchive(deleted, showPast)) {
+            var now = OffsetDateTime.now();
+            window = (status != null)
+                    ? bookingRepository.findByDeletedAndStatusAndStartTimeAfter(deleted, status, now, position, by, pageLimit)
+                    : bookingRepository.findByDeletedAndStartTimeAfter(deleted, now, position, by, pageLimit);
+        } else if (showPast) {
+            window = (status != null)
+                    ? historyRepository.findByDeletedAndStatus(deleted, status, position, by, pageLimit)
+                    : historyRepository.findByDeleted(deleted, position, by, pageLimit);
         } else {
-            bookings = (status != null)
-                    //N.B Can't combine showing future only and sorting by something else other than start time
-                    //Could implement but wouldn't be as clean, and it's not necessary for API
-                    ? bookingRepository.findFutureFilterStatus(deleted, status.name())
-                    : bookingRepository.findFuture(deleted);
+            var now = OffsetDateTime.now();
+            window = (status != null)
+                    ? historyRepository.findByDeletedAndStatusAndStartTimeAfter(deleted, status, now, position, by, pageLimit)
+                    : historyRepository.findByDeletedAndStartTimeAfter(deleted, now, position, by, pageLimit);
         }
 
-        return bookings.stream().map(bookingMapper::toDto).toList();
+        String nextCursor = (window.hasNext() && !window.isEmpty())
+                ? KeysetCursor.encode(window.positionAt(window.size() - 1))
+                : null;
+
+        return new BookingPageDto(
+                window.getContent(),
+                nextCursor
+        );
     }
 
     @Transactional
-    public void createBooking(CreateAvailableSlotDto dto){
-        var booking = bookingMapper.availableDtoToEntity(dto);
-        bookingRepository.save(booking);
+    public CreateSlotResult createBooking(CreateAvailableSlotDto dto){
+        var start = dto.getStartTime();
+        var end = dto.getEndTime();
+
+        //The index is only a hint, so a hit is confirmed against the table before turning the slot down
+        Booking clash = slotIndex.findOverlap(start, end).isPresent()
+                ? bookingRepository.findFirstOverlapping(start, end).orElse(null)
+                : null;
+
+        if (clash == null) {
+            var created = bookingRepository.insertIfFree(start, end).orElse(null);
+            if (created != null) {
+                eventPublisher.publishEvent(BookingChangedEvent.of(created, BookingChange.CREATED));
+                return new CreateSlotResult(ServiceResult.SUCCESS, null);
+            }
+            //Clashed with something the index hadn't seen (another node, or a concurrent create)
+            clash = bookingRepository.findFirstOverlapping(start, end).orElse(null);
+        }
+
+        meterRegistry.counter(CONFLICTS_METRIC, "operation", "create").increment();
+        return new CreateSlotResult(ServiceResult.CONFLICT, clash != null ? bookingMapper.toDto(clash) : null);
     }
 
     @Transactional
     public ServiceResult requestBooking(Long id, RequestBookingDto dto){
-        var booking = bookingRepository.findById(id).orElse(null);
-        if (booking == null) return ServiceResult.NOT_FOUND;
-        if (booking.getStatus() != AVAILABLE) return ServiceResult.CONFLICT;
+        var booking = bookingRepository.claimAvailable(
+                id, dto.getName(), dto.getEmail(), dto.getPhone(), dto.getTopic(), dto.getNotes()
+        ).orElse(null);
+        if (booking == null) {
+            //Only look again when the claim missed, to tell the two apart
+            if (!bookingRepository.existsByIdAndDeleted(id, false)) return ServiceResult.NOT_FOUND;
+            meterRegistry.counter(CONFLICTS_METRIC, "operation", "request").increment();
+            return ServiceResult.CONFLICT;
+        }
+        //Already in the persistence context (e.g. same transaction loaded it) means Hibernate handed back the old copy
+        if (booking.getStatus() != PENDING) entityManager.refresh(booking);
 
-        bookingMapper.applyRequestToBooking(dto, booking);
-        booking.setStatus(PENDING);
-        bookingRepository.save(booking);
+        eventPublisher.publishEvent(BookingChangedEvent.of(booking, BookingChange.CLAIMED));
 
         emailService.notifyBookingRequested(booking);
 
@@ -85,24 +219,38 @@ public class BookingService {
 
     @Transactional
     public ServiceResult updateBookingStatus(Long id, UpdateBookingStatusDto dto){
-        var booking = bookingRepository.findById(id).orElse(null);
+        var booking = bookingRepository.findByIdAndDeleted(id, false).orElse(null);
         if(booking == null) return ServiceResult.NOT_FOUND;
 
+        boolean wasAvailable = booking.getStatus() == AVAILABLE;
+        boolean wasConfirmed = booking.getStatus() == CONFIRMED;
         booking.setStatus(dto.getStatus());
         bookingRepository.save(booking);
+        if (wasConfirmed && booking.getStatus() != CONFIRMED) bookingRepository.forgetReminders(id);
+        eventPublisher.publishEvent(BookingChangedEvent.of(booking, availabilityChange(wasAvailable, booking.getStatus())));
 
         emailService.sendBookingUpdated(booking);
 
         return ServiceResult.SUCCESS;
     }
 
+    /// Soft delete: the row stays (listed with showDeleted) until BookingArchiveService moves it out.
+    /// Its time is free again straight away, booking_no_overlap only covers live rows.
     @Transactional
     public ServiceResult deleteBooking(Long id){
-        var booking = bookingRepository.findById(id).orElse(null);
+        var booking = bookingRepository.findByIdAndDeleted(id, false).orElse(null);
         if(booking == null) return ServiceResult.NOT_FOUND;
 
-        bookingRepository.delete(booking);
+        booking.setDeleted(true);
+        bookingRepository.save(booking);
+        eventPublisher.publishEvent(BookingChangedEvent.of(booking, BookingChange.DELETED));
         return ServiceResult.SUCCESS;
     }
 
+    private static BookingChange availabilityChange(boolean wasAvailable, BookingStatus status){
+        boolean available = status == AVAILABLE;
+        if (wasAvailable == available) return BookingChange.UPDATED;
+        return available ? BookingChange.RELEASED : BookingChange.CLAIMED;
+    }
+
 }
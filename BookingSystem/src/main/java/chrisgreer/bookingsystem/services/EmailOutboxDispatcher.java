@@ -0,0 +1,201 @@
+package chrisgreer.bookingsystem.services;
+
+import chrisgreer.bookingsystem.config.SchedulingConfig;
+import chrisgreer.bookingsystem.entities.EmailOutbox;
+import chrisgreer.bookingsystem.repositories.EmailOutboxRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/// Drains the email_outbox table in the background so SMTP never runs on a request thread
+@Slf4j
+@Service
+public class EmailOutboxDispatcher {
+
+    private final EmailOutboxRepository outboxRepository;
+    private final JavaMailSender mailSender;
+    private final TransactionTemplate transactionTemplate;
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final Timer sentTimer;
+    private final Timer failedTimer;
+
+    @Value("${email.outbox.batch-size:20}")
+    private int batchSize;
+
+    @Value("${email.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${email.outbox.initial-backoff:30s}")
+    private Duration initialBackoff;
+
+    @Value("${email.outbox.max-backoff:1h}")
+    private Duration maxBackoff;
+
+    //Longer than a batch can take to send, every message timing out included
+    @Value("${email.outbox.lease:5m}")
+    private Duration lease;
+
+    @Value("${email.outbox.retention:7d}")
+    private Duration retention;
+
+    @Value("${email.outbox.shutdown-timeout:20s}")
+    private Duration shutdownTimeout;
+
+    public EmailOutboxDispatcher(EmailOutboxRepository outboxRepository,
+                                 JavaMailSender mailSender,
+                                 PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry) {
+        this.outboxRepository = outboxRepository;
+        this.mailSender = mailSender;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        //SMTP time per message (a batch's split evenly), the failure series' count is the failure counter
+        this.sentTimer = sendTimer(meterRegistry, "success");
+        this.failedTimer = sendTimer(meterRegistry, "failure");
+    }
+
+    private static Timer sendTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("booking.email.send")
+                .description("Time to hand one outbox message to the SMTP server")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${email.outbox.poll-interval:2s}",
+            initialDelayString = "${email.outbox.poll-interval:2s}",
+            scheduler = SchedulingConfig.MAIL_SCHEDULER)
+    public void dispatchPending() {
+        drain(null);
+    }
+
+    /// Sent and given-up rows are only kept for email.outbox.retention, to look into what went out
+    @Scheduled(fixedDelayString = "${email.outbox.purge-interval:1h}",
+            initialDelayString = "${email.outbox.purge-interval:1h}")
+    public void purgeFinished() {
+        int purged = outboxRepository.deleteFinished(OffsetDateTime.now().minus(retention), maxAttempts);
+        if (purged > 0) log.debug("Purged {} finished outbox email(s)", purged);
+    }
+
+    /// Give anything queued by the last requests a chance to go out before the node stops
+    @PreDestroy
+    public void drainOnShutdown() {
+        long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+        int sent = drain(deadline);
+        log.info("Email outbox drained {} message(s) on shutdown", sent);
+    }
+
+    /// Keeps taking batches until one comes back short (or the deadline passes)
+    private int drain(Long deadlineNanos) {
+        drainLock.lock();
+        try {
+            int total = 0;
+            int handled;
+            do {
+                handled = dispatchBatch();
+                total += handled;
+            } while (handled == batchSize
+                    && (deadlineNanos == null || System.nanoTime() < deadlineNanos));
+            return total;
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /// Three steps, so no connection or row lock is held over SMTP: lease the rows (committed at once),
+    /// send them with no transaction open, then record how each went in a second short transaction
+    private int dispatchBatch() {
+        var leasedUntil = OffsetDateTime.now().plus(lease);
+        List<EmailOutbox> batch = outboxRepository.leaseNextBatch(maxAttempts, batchSize, leasedUntil);
+        if (batch.isEmpty()) return 0;
+        send(batch);
+        transactionTemplate.executeWithoutResult(status -> record(batch));
+        return batch.size();
+    }
+
+    private void record(List<EmailOutbox> batch) {
+        List<Long> sent = batch.stream().filter(e -> e.getSentAt() != null).map(EmailOutbox::getId).toList();
+        if (!sent.isEmpty()) outboxRepository.markSent(sent, OffsetDateTime.now());
+        batch.stream().filter(e -> e.getSentAt() == null).forEach(e ->
+                outboxRepository.markFailed(e.getId(), e.getAttempts(), e.getLastError(), e.getNextAttemptAt()));
+    }
+
+    /// The whole batch in one send call, so one SMTP session (a pooled one, see PooledJavaMailSender).
+    /// Each message still succeeds or fails, and backs off, on its own
+    private void send(List<EmailOutbox> batch) {
+        MimeMessage[] messages = new MimeMessage[batch.size()];
+        Map<Object, Exception> failed = new IdentityHashMap<>();
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = mailSender.createMimeMessage();
+            try {
+                MimeMessageHelper helper = new MimeMessageHelper(messages[i]);
+                helper.setTo(batch.get(i).getRecipient());
+                helper.setSubject(batch.get(i).getSubject());
+                helper.setText(batch.get(i).getBody());
+            } catch (MessagingException ex) {
+                failed.put(messages[i], ex);
+            }
+        }
+
+        long start = System.nanoTime();
+        try {
+            //Any that couldn't be built (a bad address) are left out
+            MimeMessage[] built = Arrays.stream(messages).filter(m -> !failed.containsKey(m)).toArray(MimeMessage[]::new);
+            if (built.length > 0) mailSender.send(built);
+        } catch (MailSendException ex) {
+            //Keyed by the messages that failed. Empty if it was the connection (to close) that failed
+            failed.putAll(ex.getFailedMessages());
+            if (ex.getFailedMessages().isEmpty()) log.warn("Email batch sent, but: {}", ex.getMessage());
+        } catch (MailException ex) {
+            //Couldn't connect or authenticate, none of it went
+            for (MimeMessage message : messages) failed.putIfAbsent(message, ex);
+        }
+        //Per message, as before batching
+        long share = (System.nanoTime() - start) / messages.length;
+
+        for (int i = 0; i < messages.length; i++) {
+            EmailOutbox email = batch.get(i);
+            Exception ex = failed.get(messages[i]);
+            if (ex == null) {
+                sentTimer.record(share, TimeUnit.NANOSECONDS);
+                email.setSentAt(OffsetDateTime.now());
+                email.setLastError(null);
+                continue;
+            }
+            failedTimer.record(share, TimeUnit.NANOSECONDS);
+            int attempts = email.getAttempts() + 1;
+            email.setAttempts(attempts);
+            email.setLastError(ex.getMessage());
+            email.setNextAttemptAt(OffsetDateTime.now().plus(backoff(attempts)));
+            log.warn("Email {} to {} failed (attempt {}/{}): {}",
+                    email.getId(), email.getRecipient(), attempts, maxAttempts, ex.getMessage());
+        }
+    }
+
+    /// Exponential backoff, doubling per attempt and capped at max-backoff
+    Duration backoff(int attempts) {
+        int shift = Math.min(attempts - 1, 20);
+        Duration delay = initialBackoff.multipliedBy(1L << shift);
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+}
@@ -1,24 +1,28 @@
 package chrisgreer.bookingsystem.services;
 
 import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.entities.EmailOutbox;
+import chrisgreer.bookingsystem.repositories.EmailOutboxRepository;
 import chrisgreer.bookingsystem.utils.DateTimeUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
 
 
 @Service
 @RequiredArgsConstructor
 public class EmailService {
 
-    private final JavaMailSender mailSender;
+    private final EmailOutboxRepository outboxRepository;
 
     @Value("${spring.mail.username}")
     private String adminEmail;
 
     /// For when someone has requested a booking, notify me
+    @Transactional
     public void notifyBookingRequested(Booking booking) {
         String subject = "Booking requested: " + DateTimeUtil.format(booking.getStartTime());
         String body = buildBookingDetailsBody(booking);
@@ -28,6 +32,7 @@ public class EmailService {
     }
 
     /// For when I've changed a booking, notify the requester
+    @Transactional
     public void sendBookingUpdated(Booking booking){
         if(booking.getEmail() == null) return;
         String subject = "Booking Updated: " + booking.getStatus();
@@ -35,15 +40,30 @@ public class EmailService {
         sendEmail(booking.getEmail(), subject, body);
     }
 
+    /// Ahead of a confirmed booking, remind the requester (ReminderService)
+    @Transactional
+    public void sendBookingReminder(Booking booking, Duration before){
+        if(booking.getEmail() == null) return;
+        String subject = "Reminder: your booking starts in " + describe(before)
+                + " (" + DateTimeUtil.format(booking.getStartTime()) + ")";
+        String body = buildBookingDetailsBody(booking);
+        sendEmail(booking.getEmail(), subject, body);
+    }
+
+    //"24 hours", "1 hour", "30 minutes"
+    private static String describe(Duration duration) {
+        if (duration.toMinutesPart() == 0 && duration.toHours() > 0) {
+            return duration.toHours() + (duration.toHours() == 1 ? " hour" : " hours");
+        }
+        return duration.toMinutes() + (duration.toMinutes() == 1 ? " minute" : " minutes");
+    }
+
+    /// Queued in the caller's transaction, actually sent later by EmailOutboxDispatcher
     private void sendEmail(String to, String subject, String body) {
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setTo(to);
-        message.setSubject(subject);
-        message.setText(body);
-        mailSender.send(message);
+        outboxRepository.save(new EmailOutbox(to, subject, body));
     }
 
-    private String buildBookingDetailsBody(Booking booking) {
+    String buildBookingDetailsBody(Booking booking) {
         return """
             Name: %s
             Email: %s
@@ -0,0 +1,112 @@
+package chrisgreer.bookingsystem.services;
+
+import chrisgreer.bookingsystem.config.ReplicaRoutingDataSource;
+import chrisgreer.bookingsystem.entities.IdempotencyRecord;
+import chrisgreer.bookingsystem.model.IdempotentResponse;
+import chrisgreer.bookingsystem.repositories.IdempotencyKeyRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/// Stored responses for Idempotency-Key retries (IdempotencyFilter).
+///
+/// The idempotency_key table is the truth, shared by every node and kept for booking.idempotency.ttl.
+/// A bounded LRU of finished responses sits in front of it, so the usual case (a client retrying
+/// against the node that answered it) is a map lookup. Only finished responses are cached,
+/// an in-progress claim is always checked against the table.
+@Slf4j
+@Service
+public class IdempotencyService {
+
+    private final IdempotencyKeyRepository repository;
+    private final Duration ttl;
+    private final Duration lease;
+    private final Map<String, IdempotentResponse> recent;
+
+    public IdempotencyService(IdempotencyKeyRepository repository,
+                              @Value("${booking.idempotency.ttl:24h}") Duration ttl,
+                              @Value("${booking.idempotency.lease:1m}") Duration lease,
+                              @Value("${booking.idempotency.cache-size:10000}") int cacheSize) {
+        this.repository = repository;
+        this.ttl = ttl;
+        this.lease = lease;
+        //Access ordered, so the eldest entry is the least recently used one
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IdempotentResponse> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /// The finished response for the key, if there is one that hasn't expired
+    public Optional<IdempotentResponse> find(String key) {
+        long now = System.currentTimeMillis();
+        IdempotentResponse cached;
+        synchronized (recent) {
+            cached = recent.get(key);
+        }
+        if (cached != null) {
+            if (cached.expiresAtMillis() > now) return Optional.of(cached);
+            synchronized (recent) {
+                recent.remove(key);
+            }
+        }
+
+        //The replica may not have the claim or the response yet, and replaying is decided on this
+        return ReplicaRoutingDataSource.onPrimary(() -> repository.findById(key))
+                .filter(r -> r.getStatus() != null && r.getExpiresAt().toInstant().toEpochMilli() > now)
+                .map(IdempotencyService::toResponse)
+                .map(r -> {
+                    cache(key, r);
+                    return r;
+                });
+    }
+
+    /// True if the caller now owns the key and should run the request, then complete or release it
+    public boolean claim(String key, String request) {
+        return repository.claim(key, request, OffsetDateTime.now().plus(lease)) == 1;
+    }
+
+    public void complete(String key, String request, int status, String contentType, byte[] body) {
+        var expiresAt = OffsetDateTime.now().plus(ttl);
+        repository.complete(key, status, contentType, body, expiresAt);
+        cache(key, new IdempotentResponse(request, status, contentType, body, expiresAt.toInstant().toEpochMilli()));
+    }
+
+    public void release(String key) {
+        repository.release(key);
+    }
+
+    /// Drops this node's cached responses (the table still has them). Tests only, through IdempotencyTestHooks
+    void invalidateLocal() {
+        synchronized (recent) {
+            recent.clear();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${booking.idempotency.purge-interval:1h}",
+            initialDelayString = "${booking.idempotency.purge-interval:1h}")
+    public void purgeExpired() {
+        int purged = repository.deleteExpired(OffsetDateTime.now());
+        if (purged > 0) log.debug("Purged {} expired idempotency key(s)", purged);
+    }
+
+    private void cache(String key, IdempotentResponse response) {
+        synchronized (recent) {
+            recent.put(key, response);
+        }
+    }
+
+    private static IdempotentResponse toResponse(IdempotencyRecord record) {
+        return new IdempotentResponse(record.getRequest(), record.getStatus(), record.getContentType(),
+                record.getBody(), record.getExpiresAt().toInstant().toEpochMilli());
+    }
+}
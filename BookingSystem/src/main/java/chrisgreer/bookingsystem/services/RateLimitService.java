@@ -0,0 +1,97 @@
+package chrisgreer.bookingsystem.services;
+
+import chrisgreer.bookingsystem.utils.TokenBuckets;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/// Per client address limits for the endpoints anyone can call (RateLimitFilter).
+///
+/// Each route has its own buckets and limits (booking.rate-limit.<route>.*), so a scraper paging
+/// through the public list doesn't use up its allowance for booking requests and the other way round.
+/// Without it one client can hold every connection in the (5 wide) Hikari pool.
+@Slf4j
+@Service
+public class RateLimitService implements MeterBinder {
+
+    public enum Route {
+        PUBLIC("public"),
+        REQUEST("request");
+
+        private final String tag;
+
+        Route(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private record Limiter(TokenBuckets buckets, LongAdder allowed, LongAdder rejected) {
+        Limiter(TokenBuckets buckets) {
+            this(buckets, new LongAdder(), new LongAdder());
+        }
+    }
+
+    private final boolean enabled;
+    private final Map<Route, Limiter> limiters = new EnumMap<>(Route.class);
+
+    public RateLimitService(@Value("${booking.rate-limit.enabled:true}") boolean enabled,
+                            @Value("${booking.rate-limit.max-clients:20000}") int maxClients,
+                            @Value("${booking.rate-limit.public.burst:30}") int publicBurst,
+                            @Value("${booking.rate-limit.public.per-minute:120}") int publicPerMinute,
+                            @Value("${booking.rate-limit.request.burst:5}") int requestBurst,
+                            @Value("${booking.rate-limit.request.per-minute:10}") int requestPerMinute) {
+        this.enabled = enabled;
+        limiters.put(Route.PUBLIC, new Limiter(
+                new TokenBuckets(publicBurst, publicPerMinute, Duration.ofMinutes(1), maxClients)));
+        limiters.put(Route.REQUEST, new Limiter(
+                new TokenBuckets(requestBurst, requestPerMinute, Duration.ofMinutes(1), maxClients)));
+    }
+
+    /// 0 if the client can go ahead, otherwise the nanos until it can
+    public long admit(Route route, String client) {
+        if (!enabled) return 0;
+        Limiter limiter = limiters.get(route);
+        long wait = limiter.buckets().tryAcquire(client, System.nanoTime());
+        (wait == 0 ? limiter.allowed() : limiter.rejected()).increment();
+        return wait;
+    }
+
+    /// Full buckets are the same as no bucket, so they're dropped rather than held until the cap
+    @Scheduled(fixedDelayString = "${booking.rate-limit.evict-interval:1m}",
+            initialDelayString = "${booking.rate-limit.evict-interval:1m}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        limiters.forEach((route, limiter) -> {
+            int evicted = limiter.buckets().evictIdle(now);
+            if (evicted > 0) log.debug("Evicted {} idle {} rate limit bucket(s)", evicted, route.tag);
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        limiters.forEach((route, limiter) -> {
+            FunctionCounter.builder("booking.ratelimit.requests", limiter.allowed(), LongAdder::sum)
+                    .tag("route", route.tag)
+                    .tag("result", "allowed")
+                    .register(registry);
+            FunctionCounter.builder("booking.ratelimit.requests", limiter.rejected(), LongAdder::sum)
+                    .tag("route", route.tag)
+                    .tag("result", "rejected")
+                    .register(registry);
+            Gauge.builder("booking.ratelimit.clients", limiter.buckets(), TokenBuckets::size)
+                    .tag("route", route.tag)
+                    .description("Client addresses with a bucket")
+                    .register(registry);
+        });
+    }
+}
@@ -0,0 +1,112 @@
+package chrisgreer.bookingsystem.services;
+
+import chrisgreer.bookingsystem.dtos.CreateRecurringSlotsDto;
+import chrisgreer.bookingsystem.dtos.SlotGenerationResultDto;
+import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.events.BookingChangedEvent;
+import chrisgreer.bookingsystem.model.BookingChange;
+import chrisgreer.bookingsystem.model.SlotRange;
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.utils.SlotIntervalIndex;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/// Expands a recurring availability rule into individual AVAILABLE slots
+@Service
+@RequiredArgsConstructor
+public class RecurringSlotService {
+
+    private final BookingRepository bookingRepository;
+    private final EntityManager entityManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SlotIndexService slotIndex;
+
+    //Matches hibernate.jdbc.batch_size, so each flush is one JDBC batch
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchSize;
+
+    @Transactional
+    public SlotGenerationResultDto generate(CreateRecurringSlotsDto dto) {
+        List<Booking> slots = expand(dto);
+        if (slots.isEmpty()) return new SlotGenerationResultDto(0, 0);
+
+        //One query to bring the index up to date (including this transaction's own rows),
+        //then every slot is an O(log n) lookup against it and against the ones accepted so far
+        slotIndex.refresh();
+        var accepted = new SlotIntervalIndex();
+
+        var now = OffsetDateTime.now();
+        int created = 0;
+        int skipped = 0;
+        List<Booking> batch = new ArrayList<>(batchSize);
+        OffsetDateTime firstStart = null;
+        OffsetDateTime lastEnd = null;
+        for (Booking slot : slots) {
+            var start = slot.getStartTime();
+            var end = slot.getEndTime();
+            if (!start.isAfter(now)
+                    || slotIndex.findOverlap(start, end).isPresent()
+                    || accepted.findOverlap(start, end).isPresent()) {
+                skipped++;
+                continue;
+            }
+            accepted.put(new SlotRange(null, start, end));
+            if (firstStart == null) firstStart = start;
+            lastEnd = end;
+            batch.add(slot);
+            created++;
+            if (batch.size() == batchSize) flushBatch(batch);
+        }
+        flushBatch(batch);
+
+        //One event for the whole run, spanning the first to the last slot made
+        if (created > 0) {
+            eventPublisher.publishEvent(new BookingChangedEvent(
+                    null, BookingChange.CREATED, firstStart, lastEnd));
+        }
+
+        return new SlotGenerationResultDto(created, skipped);
+    }
+
+    /// Slots in start time order, wall clock times are in the rule's zone (so DST is handled)
+    List<Booking> expand(CreateRecurringSlotsDto dto) {
+        var zone = ZoneId.of(dto.getTimeZone());
+        var firstDay = dto.getStartDate() != null ? dto.getStartDate() : LocalDate.now(zone);
+        var slotLength = Duration.ofMinutes(dto.getSlotMinutes());
+
+        List<Booking> slots = new ArrayList<>();
+        for (int day = 0; day < dto.getWeeks() * 7; day++) {
+            var date = firstDay.plusDays(day);
+            if (!dto.getDaysOfWeek().contains(date.getDayOfWeek())) continue;
+
+            for (var start = dto.getDayStart();
+                 !start.plus(slotLength).isAfter(dto.getDayEnd()) && !start.plus(slotLength).isBefore(start);
+                 start = start.plus(slotLength)) {
+
+                var startTime = ZonedDateTime.of(date, start, zone);
+                var slot = new Booking();
+                slot.setStartTime(startTime.toOffsetDateTime());
+                slot.setEndTime(startTime.plus(slotLength).toOffsetDateTime());
+                slot.setTimeZone(zone.getId());
+                slots.add(slot);
+            }
+        }
+        return slots;
+    }
+
+    private void flushBatch(List<Booking> batch) {
+        if (batch.isEmpty()) return;
+        bookingRepository.saveAll(batch);
+        entityManager.flush();
+        entityManager.clear();
+        batch.clear();
+    }
+}
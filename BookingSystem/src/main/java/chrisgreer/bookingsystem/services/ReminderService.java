@@ -0,0 +1,152 @@
+package chrisgreer.bookingsystem.services;
+
+import chrisgreer.bookingsystem.events.BookingChangedEvent;
+import chrisgreer.bookingsystem.model.BookingChange;
+import chrisgreer.bookingsystem.model.SlotRange;
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.utils.TimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+import static chrisgreer.bookingsystem.model.BookingStatus.CONFIRMED;
+
+/// Reminder emails ahead of confirmed bookings (booking.reminders.before, 24h and 1h by default).
+///
+/// The timers live in a TimingWheel, loaded from the table at startup and kept current from booking
+/// change events, so nothing polls the booking table for due reminders. Changes made on another node
+/// only reach this one's wheel on the next refresh, so the wheel is just a schedule: each reminder is
+/// claimed in booking_reminder against the row's current state before it's queued, which also stops
+/// a restart or a second node sending it again. Those claims go when the booking stops being
+/// confirmed (BookingService), and are purged once it has started.
+@Slf4j
+@Service
+public class ReminderService {
+
+    private static final long TICK_MILLIS = 1000;
+
+    private final BookingRepository bookingRepository;
+    private final EmailService emailService;
+    private final TransactionTemplate transactionTemplate;
+    private final TimingWheel<Reminder> wheel = new TimingWheel<>(TICK_MILLIS, System.currentTimeMillis());
+    //Longest first
+    private final List<Duration> offsets;
+    private final long retryDelayMillis;
+    private final Counter sentCounter;
+
+    private record Reminder(Long bookingId, Duration before) { }
+
+    public ReminderService(BookingRepository bookingRepository,
+                           EmailService emailService,
+                           PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry,
+                           @Value("${booking.reminders.before:24h,1h}") List<Duration> offsets,
+                           @Value("${booking.reminders.retry-delay:30s}") Duration retryDelay) {
+        this.bookingRepository = bookingRepository;
+        this.emailService = emailService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.offsets = offsets.stream().distinct().sorted(Comparator.reverseOrder()).toList();
+        this.retryDelayMillis = retryDelay.toMillis();
+        Gauge.builder("booking.reminders.scheduled", wheel, TimingWheel::size)
+                .description("Reminder timers waiting in the wheel")
+                .register(meterRegistry);
+        this.sentCounter = Counter.builder("booking.reminders.sent")
+                .description("Reminder emails queued")
+                .register(meterRegistry);
+    }
+
+    /// Picks up confirmations made on other nodes. Reminders already in the wheel are just replaced
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${booking.reminders.refresh-interval:1h}",
+            initialDelayString = "${booking.reminders.refresh-interval:1h}")
+    public void refresh() {
+        bookingRepository.findConfirmedStartingAfter(OffsetDateTime.now()).forEach(this::schedule);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookingChanged(BookingChangedEvent event) {
+        if (event.bookingId() == null || event.change() == BookingChange.CREATED) return;
+        if (event.change() == BookingChange.DELETED) {
+            cancel(event.bookingId());
+            return;
+        }
+
+        bookingRepository.findByIdAndDeleted(event.bookingId(), false)
+                .filter(b -> b.getStatus() == CONFIRMED)
+                .ifPresentOrElse(
+                        b -> schedule(new SlotRange(b.getId(), b.getStartTime(), b.getEndTime())),
+                        () -> cancel(event.bookingId())
+                );
+    }
+
+    @Scheduled(fixedDelay = TICK_MILLIS)
+    public void sendDue() {
+        long now = System.currentTimeMillis();
+        for (Reminder reminder : wheel.advance(now)) {
+            try {
+                send(reminder);
+            } catch (RuntimeException ex) {
+                //Not claimed, and waiting for the refresh could take it past the start. Once the booking
+                //has started (or is no longer confirmed) the claim comes back empty and it stops there
+                log.warn("Reminder for booking {} failed, retrying in {} ms: {}",
+                        reminder.bookingId(), retryDelayMillis, ex.getMessage());
+                wheel.schedule(reminder, now + retryDelayMillis);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${booking.reminders.purge-interval:1h}",
+            initialDelayString = "${booking.reminders.purge-interval:1h}")
+    public void purgeSent() {
+        Integer purged = transactionTemplate.execute(s -> bookingRepository.deleteStartedReminders(OffsetDateTime.now()));
+        if (purged != null && purged > 0) log.debug("Purged {} reminder claim(s) for started bookings", purged);
+    }
+
+    public boolean isScheduled(Long bookingId) {
+        return offsets.stream().anyMatch(before -> wheel.contains(new Reminder(bookingId, before)));
+    }
+
+    private void send(Reminder reminder) {
+        transactionTemplate.executeWithoutResult(s -> bookingRepository
+                .claimReminder(reminder.bookingId(), reminder.before().toMinutes())
+                .ifPresent(booking -> {
+                    emailService.sendBookingReminder(booking, reminder.before());
+                    sentCounter.increment();
+                }));
+    }
+
+    //A reminder whose time has already passed (confirmed late, or this node was down) still goes out
+    //if the booking hasn't started, but only the latest of those, nobody wants a 24h and a 1h at once
+    private void schedule(SlotRange booking) {
+        long start = booking.startTime().toInstant().toEpochMilli();
+        long now = System.currentTimeMillis();
+        if (start <= now) return;
+
+        for (int i = 0; i < offsets.size(); i++) {
+            var reminder = new Reminder(booking.id(), offsets.get(i));
+            long due = start - offsets.get(i).toMillis();
+            boolean superseded = due <= now && i + 1 < offsets.size()
+                    && start - offsets.get(i + 1).toMillis() <= now;
+            if (superseded) wheel.cancel(reminder);
+            else wheel.schedule(reminder, due);
+        }
+    }
+
+    private void cancel(Long bookingId) {
+        offsets.forEach(before -> wheel.cancel(new Reminder(bookingId, before)));
+    }
+}
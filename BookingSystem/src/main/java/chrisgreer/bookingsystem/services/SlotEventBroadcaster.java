@@ -0,0 +1,230 @@
+package chrisgreer.bookingsystem.services;
+
+import chrisgreer.bookingsystem.dtos.SlotChangeDto;
+import chrisgreer.bookingsystem.events.BookingChangedEvent;
+import chrisgreer.bookingsystem.model.BookingChange;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/// Streams slot changes to GET /booking/public/events subscribers, so browsers don't have to poll.
+///
+/// Publishing only ever offers to each subscriber's bounded queue, it never writes to a socket.
+/// A small pool of sender threads drains the queues, one drain per subscriber at a time so an emitter
+/// is only ever written by one thread. A subscriber whose queue fills up is dropped (EventSource
+/// reconnects by itself, and should refetch on reconnect since there's no replay).
+///
+/// Platform threads rather than virtual ones: SseEmitter writes inside synchronized, which on JDK 21
+/// pins the carrier, and a client stuck in a write would hold it until Tomcat's write timeout.
+@Slf4j
+@Service
+public class SlotEventBroadcaster implements MeterBinder {
+
+    private final ObjectMapper objectMapper;
+    private final ExecutorService senders;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong eventIds = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+
+    @Value("${booking.events.max-subscribers:5000}")
+    private int maxSubscribers;
+
+    @Value("${booking.events.buffer-size:32}")
+    private int bufferSize;
+
+    @Value("${booking.events.timeout:30m}")
+    private Duration timeout;
+
+    public SlotEventBroadcaster(ObjectMapper objectMapper,
+                                @Value("${booking.events.sender-threads:4}") int senderThreads) {
+        this.objectMapper = objectMapper;
+        var threadNumber = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(senderThreads, r -> {
+            var thread = new Thread(r, "sse-sender-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /// Null id frames are SSE comments, used for the hello and heartbeats
+    private record Frame(long id, String name, String data) { }
+
+    private final class Subscriber {
+        final SseEmitter emitter;
+        final ArrayBlockingQueue<Frame> queue = new ArrayBlockingQueue<>(bufferSize);
+        final AtomicBoolean draining = new AtomicBoolean();
+        volatile boolean closed;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+
+    /// Empty when the node already has max-subscribers open
+    public Optional<SseEmitter> subscribe() {
+        var emitter = new SseEmitter(timeout.toMillis());
+        return register(emitter) ? Optional.of(emitter) : Optional.empty();
+    }
+
+    /// Takes an emitter the caller built (tests use this to stand in for a connection)
+    public boolean register(SseEmitter emitter) {
+        if (subscribers.size() >= maxSubscribers) return false;
+
+        var subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> close(subscriber));
+        emitter.onTimeout(() -> close(subscriber));
+        emitter.onError(e -> close(subscriber));
+        subscribers.add(subscriber);
+
+        //Gets the response headers out straight away, so proxies and the browser see the stream open
+        enqueue(subscriber, new Frame(0, null, "connected"));
+        return true;
+    }
+
+    /// After commit, so nobody hears about a change that then rolls back
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookingChanged(BookingChangedEvent event) {
+        if (event.change() == BookingChange.UPDATED || subscribers.isEmpty()) return;
+
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(new SlotChangeDto(
+                    event.bookingId(), event.change(), event.startTime(), event.endTime()));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialise slot change", e);
+        }
+
+        //Serialised once, every subscriber gets the same frame
+        var frame = new Frame(eventIds.incrementAndGet(), event.change().name().toLowerCase(Locale.ROOT), json);
+        subscribers.forEach(s -> enqueue(s, frame));
+    }
+
+    /// Keeps idle connections from being cut by proxies, and finds the ones that have gone away
+    @Scheduled(fixedDelayString = "${booking.events.heartbeat:30s}",
+            initialDelayString = "${booking.events.heartbeat:30s}")
+    public void heartbeat() {
+        var frame = new Frame(0, null, "heartbeat");
+        subscribers.forEach(s -> enqueue(s, frame));
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("booking.events.subscribers", subscribers, Set::size)
+                .description("Open slot change streams")
+                .register(registry);
+        FunctionCounter.builder("booking.events.dropped", dropped, LongAdder::sum)
+                .description("Subscribers cut off because they fell a full buffer behind")
+                .register(registry);
+    }
+
+    private void enqueue(Subscriber subscriber, Frame frame) {
+        if (subscriber.closed) return;
+        if (!subscriber.queue.offer(frame)) {
+            dropped.increment();
+            log.debug("Dropping slot event subscriber, {} events behind", bufferSize);
+            close(subscriber);
+        }
+        scheduleDrain(subscriber);
+    }
+
+    //Closing goes through the drain as well, complete() waits on the emitter's lock while a write is stuck
+    private void close(Subscriber subscriber) {
+        subscriber.closed = true;
+        subscribers.remove(subscriber);
+        subscriber.queue.clear();
+    }
+
+    private void scheduleDrain(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            try {
+                senders.execute(() -> drain(subscriber));
+            } catch (RuntimeException e) {
+                //Executor already shut down
+                subscriber.draining.set(false);
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            while (true) {
+                if (subscriber.closed) {
+                    subscriber.emitter.complete();
+                    return;
+                }
+                Frame frame = subscriber.queue.poll();
+                if (frame == null) {
+                    subscriber.draining.set(false);
+                    //Something may have been offered between the poll and the flag going down
+                    if (subscriber.queue.isEmpty() && !subscriber.closed) return;
+                    if (!subscriber.draining.compareAndSet(false, true)) return;
+                    continue;
+                }
+                subscriber.emitter.send(toEvent(frame));
+            }
+        } catch (Exception e) {
+            //Client went away, the emitter's error callback isn't guaranteed outside a request thread
+            close(subscriber);
+            subscriber.emitter.completeWithError(e);
+        }
+    }
+
+    private static SseEmitter.SseEventBuilder toEvent(Frame frame) {
+        if (frame.name() == null) return SseEmitter.event().comment(frame.data());
+        return SseEmitter.event()
+                .id(Long.toString(frame.id()))
+                .name(frame.name())
+                .data(frame.data(), MediaType.APPLICATION_JSON);
+    }
+
+    /// Before the web server's graceful shutdown, which would otherwise wait on every open stream
+    @EventListener(ContextClosedEvent.class)
+    public void closeAll() {
+        subscribers.forEach(s -> {
+            close(s);
+            scheduleDrain(s);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        senders.shutdown();
+        if (!senders.awaitTermination(5, TimeUnit.SECONDS)) senders.shutdownNow();
+    }
+}
@@ -0,0 +1,64 @@
+package chrisgreer.bookingsystem.services;
+
+import chrisgreer.bookingsystem.events.BookingChangedEvent;
+import chrisgreer.bookingsystem.model.BookingChange;
+import chrisgreer.bookingsystem.model.SlotRange;
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.utils.SlotIntervalIndex;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+
+/// In-memory index of live, not yet finished slots, used as a fast pre-check before touching the table.
+/// Only ever a hint: another node, a rollback or a direct SQL change can leave it stale in either direction,
+/// so the booking_no_overlap constraint always has the final say.
+@Service
+@RequiredArgsConstructor
+public class SlotIndexService {
+
+    private final BookingRepository bookingRepository;
+
+    private volatile SlotIntervalIndex index = new SlotIntervalIndex();
+
+    public Optional<SlotRange> findOverlap(OffsetDateTime start, OffsetDateTime end) {
+        return index.findOverlap(start, end);
+    }
+
+    /// Rebuilt from the table (also drops finished slots), joins the caller's transaction if there is one
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${booking.slot-index.refresh-interval:1h}",
+            initialDelayString = "${booking.slot-index.refresh-interval:1h}")
+    public void refresh() {
+        var fresh = new SlotIntervalIndex();
+        bookingRepository.findLiveRangesEndingAfter(OffsetDateTime.now()).forEach(fresh::put);
+        index = fresh;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookingChanged(BookingChangedEvent event) {
+        if (event.bookingId() == null) {
+            refresh();
+            return;
+        }
+        //Status changes leave the slot's time range as it was
+        if (event.change() != BookingChange.CREATED && event.change() != BookingChange.DELETED) return;
+
+        var current = index;
+        bookingRepository.findById(event.bookingId())
+                .filter(b -> !b.isDeleted())
+                .ifPresentOrElse(
+                        b -> current.put(new SlotRange(b.getId(), b.getStartTime(), b.getEndTime())),
+                        () -> current.remove(event.bookingId())
+                );
+    }
+
+    public int size() {
+        return index.size();
+    }
+}
@@ -0,0 +1,237 @@
+package chrisgreer.bookingsystem.services;
+
+import chrisgreer.bookingsystem.dtos.SlowQueryDto;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.QueryType;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/// Times every JDBC statement (it listens on the datasource-proxy DataSourceConfig wraps around the pools)
+/// and logs the ones over booking.slow-query.threshold. Their bound parameters (names, emails, phone numbers)
+/// only with booking.slow-query.log-parameters, which is off outside dev and tests.
+///
+/// The request thread only compares the time and, for a slow one, hands a copy to a single background
+/// thread through a bounded queue (dropped and counted when it's full). That thread does the logging and
+/// keeps the slowest distinct statements for /booking/admin/slow-queries. On Postgres it also re-runs
+/// each one it keeps under EXPLAIN, in a read-only transaction that's rolled back. SELECTs get
+/// (ANALYZE, BUFFERS), so they really run a second time. Writes only get the plan, never executed.
+/// Plans come from the primary, whichever pool the statement ran on.
+@Slf4j
+@Service
+public class SlowQueryLog implements QueryExecutionListener, MeterBinder {
+
+    //ANALYZE runs the statement again, which was slow to begin with
+    private static final int EXPLAIN_TIMEOUT_SECONDS = 30;
+    private static final QueryType[] KEYWORDS = {QueryType.SELECT, QueryType.INSERT, QueryType.UPDATE, QueryType.DELETE};
+
+    private final HikariDataSource explainDataSource;
+    private final boolean enabled;
+    private final long thresholdMillis;
+    private final boolean logParameters;
+    private final boolean explain;
+    private final int keep;
+    private final ThreadPoolExecutor worker;
+
+    private final Map<QueryType, Totals> totals = new EnumMap<>(QueryType.class);
+    private final LongAdder slow = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    //By SQL text. Only the worker changes it, the endpoint reads a copy
+    private final Map<String, SlowQueryDto> slowest = new HashMap<>();
+
+    private record Totals(LongAdder count, LongAdder millis) { }
+
+    /// Copied off the request thread, the proxy reuses its parameter lists
+    private record Statement(String sql, List<ParameterSetOperation> parameters, int batchSize,
+                             long elapsedMillis, boolean success) { }
+
+    public SlowQueryLog(@Qualifier("primaryDataSource") HikariDataSource explainDataSource,
+                        @Value("${booking.slow-query.enabled:true}") boolean enabled,
+                        @Value("${booking.slow-query.threshold:200ms}") Duration threshold,
+                        @Value("${booking.slow-query.log-parameters:false}") boolean logParameters,
+                        @Value("${booking.slow-query.explain:true}") boolean explain,
+                        @Value("${booking.slow-query.keep:20}") int keep,
+                        @Value("${booking.slow-query.queue-size:256}") int queueSize) {
+        this.explainDataSource = explainDataSource;
+        this.enabled = enabled;
+        this.thresholdMillis = threshold.toMillis();
+        this.logParameters = logParameters;
+        //EXPLAIN (ANALYZE, BUFFERS) is Postgres syntax
+        this.explain = explain && String.valueOf(explainDataSource.getJdbcUrl()).startsWith("jdbc:postgresql:");
+        this.keep = keep;
+        for (QueryType type : QueryType.values()) totals.put(type, new Totals(new LongAdder(), new LongAdder()));
+        this.worker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize),
+                r -> {
+                    var thread = new Thread(r, "slow-query-log");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (r, executor) -> dropped.increment());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        if (queryInfoList.isEmpty()) return;
+        long millis = execInfo.getElapsedTime();
+        var query = queryInfoList.get(0);
+        var type = totals.get(typeOf(query.getQuery()));
+        type.count().increment();
+        type.millis().add(millis);
+        if (millis < thresholdMillis) return;
+
+        slow.increment();
+        var parameters = query.getParametersList();
+        var statement = new Statement(
+                query.getQuery(),
+                parameters.isEmpty() ? List.of() : List.copyOf(parameters.get(0)),
+                execInfo.isBatch() ? execInfo.getBatchSize() : 1,
+                millis,
+                execInfo.isSuccess()
+        );
+        worker.execute(() -> record(statement));
+    }
+
+    /// Slowest first
+    public List<SlowQueryDto> slowest() {
+        synchronized (slowest) {
+            return slowest.values().stream()
+                    .sorted(Comparator.comparingLong(SlowQueryDto::getElapsedMillis).reversed())
+                    .toList();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        totals.forEach((type, t) -> FunctionTimer.builder("booking.jdbc.statements", t,
+                        x -> x.count().sum(), x -> x.millis().sum(), TimeUnit.MILLISECONDS)
+                .tag("type", type.name().toLowerCase(Locale.ROOT))
+                .register(registry));
+        FunctionCounter.builder("booking.jdbc.slow", slow, LongAdder::sum)
+                .description("Statements over booking.slow-query.threshold")
+                .register(registry);
+        FunctionCounter.builder("booking.jdbc.slow.dropped", dropped, LongAdder::sum)
+                .description("Slow statements not logged because the queue was full")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    private void record(Statement s) {
+        String parameters = logParameters ? format(s.parameters()) : null;
+        if (s.batchSize() > 1) {
+            log.warn("Slow statement, {} ms for a batch of {}: {} first {}",
+                    s.elapsedMillis(), s.batchSize(), s.sql(), parameters);
+            return;
+        }
+        log.warn("Slow statement, {} ms{}: {} {}", s.elapsedMillis(), s.success() ? "" : " (failed)", s.sql(),
+                parameters != null ? parameters : "");
+
+        //Only explained when it's new to the list or slower than last time
+        synchronized (slowest) {
+            var known = slowest.get(s.sql());
+            if (known != null) {
+                slowest.put(s.sql(), new SlowQueryDto(known.getSql(), known.getParameters(), known.getElapsedMillis(),
+                        known.getTimesSlow() + 1, Instant.now(), known.getPlan()));
+                if (s.elapsedMillis() <= known.getElapsedMillis()) return;
+            } else if (slowest.size() >= keep && s.elapsedMillis() <= fastest().getElapsedMillis()) {
+                return;
+            }
+        }
+
+        String plan = explain && s.success() ? explain(s) : null;
+        synchronized (slowest) {
+            var known = slowest.get(s.sql());
+            slowest.put(s.sql(), new SlowQueryDto(s.sql(), parameters, s.elapsedMillis(),
+                    known != null ? known.getTimesSlow() : 1, Instant.now(), plan));
+            if (slowest.size() > keep) slowest.remove(fastest().getSql());
+        }
+    }
+
+    private SlowQueryDto fastest() {
+        return slowest.values().stream().min(Comparator.comparingLong(SlowQueryDto::getElapsedMillis)).orElseThrow();
+    }
+
+    private String explain(Statement s) {
+        boolean select = typeOf(s.sql()) == QueryType.SELECT;
+        try (Connection connection = explainDataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            try (var statement = connection.prepareStatement((select ? "EXPLAIN (ANALYZE, BUFFERS) " : "EXPLAIN ") + s.sql())) {
+                statement.setQueryTimeout(EXPLAIN_TIMEOUT_SECONDS);
+                for (var parameter : s.parameters()) parameter.getMethod().invoke(statement, parameter.getArgs());
+                var plan = new StringJoiner("\n");
+                try (var rows = statement.executeQuery()) {
+                    while (rows.next()) plan.add(rows.getString(1));
+                }
+                return plan.toString();
+            } finally {
+                connection.rollback();
+            }
+        } catch (SQLException | ReflectiveOperationException ex) {
+            return "EXPLAIN failed: " + NestedExceptionUtils.getMostSpecificCause(ex).getMessage();
+        }
+    }
+
+    //setNull's second argument is the SQL type, not a value
+    private static String format(List<ParameterSetOperation> parameters) {
+        var joined = new StringJoiner(", ", "[", "]");
+        for (var parameter : parameters) {
+            Object[] args = parameter.getArgs();
+            Object value = ParameterSetOperation.isSetNullParameterOperation(parameter) ? null
+                    : args.length > 1 ? args[1] : null;
+            joined.add(args[0] + "=" + (value instanceof Object[] array ? Arrays.toString(array) : value));
+        }
+        return joined.toString();
+    }
+
+    //Just the first keyword, this runs for every statement. A WITH can hide a write, so it's OTHER
+    static QueryType typeOf(String sql) {
+        int start = 0;
+        while (start < sql.length() && Character.isWhitespace(sql.charAt(start))) start++;
+        for (QueryType type : KEYWORDS) {
+            String keyword = type.name();
+            if (sql.regionMatches(true, start, keyword, 0, keyword.length())) return type;
+        }
+        return QueryType.OTHER;
+    }
+}
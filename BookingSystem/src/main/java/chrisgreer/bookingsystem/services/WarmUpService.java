@@ -0,0 +1,112 @@
+package chrisgreer.bookingsystem.services;
+
+import chrisgreer.bookingsystem.mappers.BookingMapper;
+import chrisgreer.bookingsystem.model.BookingStatus;
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/// Warms a fresh process up before it's sent traffic: fills the connection pools, then runs the read
+/// paths (the listings, version probes, summary and overlap check, plus the JSON for each) against the
+/// real data for booking.warm-up.iterations rounds, so the first users don't pay for cold query plans
+/// and interpreted code.
+///
+/// Only reads, nothing is written or cached. Runners finish before Boot marks the app ready, so
+/// /actuator/health/readiness answers OUT_OF_SERVICE until this is done (Fly's check, see fly.toml).
+/// Repository timings from the warm-up do show in the metrics.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WarmUpService implements ApplicationRunner {
+
+    private final BookingService bookingService;
+    private final BookingRepository bookingRepository;
+    private final BookingMapper bookingMapper;
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<HikariDataSource> pools;
+
+    @Value("${booking.warm-up.iterations:500}")
+    private int iterations;
+
+    @Value("${booking.warm-up.max-duration:30s}")
+    private Duration maxDuration;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (iterations <= 0) return;
+
+        long start = System.nanoTime();
+        long deadline = start + maxDuration.toNanos();
+        int rounds = 0;
+        //A failed warm-up only leaves the process cold, it shouldn't keep it out of rotation
+        try {
+            pools.orderedStream().forEach(this::fill);
+            while (rounds < iterations && System.nanoTime() - deadline < 0) {
+                readPaths();
+                rounds++;
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Warm-up stopped after {} round(s): {}", rounds, ex.getMessage());
+        }
+        log.info("Warm-up ran {} round(s) in {} ms", rounds,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    //Every connection open at once, so none is left to be made on a user's request
+    private void fill(HikariDataSource pool) {
+        var connections = new ArrayList<Connection>();
+        try {
+            try {
+                for (int i = 0; i < pool.getMaximumPoolSize(); i++) connections.add(pool.getConnection());
+            } finally {
+                for (Connection connection : connections) connection.close();
+            }
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Could not fill pool " + pool.getPoolName(), ex);
+        }
+    }
+
+    //The same calls the controllers make, with their default parameters
+    private void readPaths() {
+        serialise(bookingService.getAvailableVersion());
+        serialise(bookingService.getAvailableBookings());
+        serialise(bookingService.getAvailableVersion(null, null));
+        serialise(bookingService.getAvailableBookings(null, null));
+        serialise(bookingService.getAvailabilitySummary(null, null));
+
+        serialise(bookingService.getBookingsVersion(null, false, false));
+        serialise(bookingService.getBookings(BookingService.DEFAULT_SORT, null, false, false, null, null));
+        serialise(bookingService.getBookings(BookingService.DEFAULT_SORT, BookingStatus.PENDING, false, false, null, null));
+        serialise(bookingService.getBookings(BookingService.DEFAULT_SORT, null, false, true, null, null));
+
+        //The overlap check a new slot goes through
+        var start = OffsetDateTime.now().plusDays(1).truncatedTo(ChronoUnit.HOURS);
+        bookingRepository.findFirstOverlapping(start, start.plusHours(1))
+                .map(bookingMapper::toDto)
+                .ifPresent(this::serialise);
+    }
+
+    private void serialise(Object value) {
+        try {
+            objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialise " + value.getClass().getSimpleName(), e);
+        }
+    }
+}
@@ -1,11 +1,12 @@
 package chrisgreer.bookingsystem.utils;
 
+import java.time.LocalDate;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
 public class DateTimeUtil {
-    private static final ZoneId LONDON_ZONE = ZoneId.of("Europe/London");
+    public static final ZoneId LONDON_ZONE = ZoneId.of("Europe/London");
 
     private static final DateTimeFormatter FORMATTER =
             DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm z");
@@ -13,4 +14,13 @@ public class DateTimeUtil {
     public static String format(OffsetDateTime dateTime) {
         return dateTime.atZoneSameInstant(LONDON_ZONE).format(FORMATTER);
     }
+
+    /// Midnight in London, so calendar days line up with the times shown in emails
+    public static OffsetDateTime startOfDay(LocalDate date) {
+        return date.atStartOfDay(LONDON_ZONE).toOffsetDateTime();
+    }
+
+    public static LocalDate today() {
+        return LocalDate.now(LONDON_ZONE);
+    }
 }
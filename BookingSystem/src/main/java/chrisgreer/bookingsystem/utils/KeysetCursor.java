@@ -0,0 +1,60 @@
+package chrisgreer.bookingsystem.utils;
+
+import chrisgreer.bookingsystem.exceptions.InvalidCursorException;
+import chrisgreer.bookingsystem.model.BookingStatus;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/// Turns a keyset position (e.g. startTime + id of the last row) into an opaque string and back
+public class KeysetCursor {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    public static String encode(ScrollPosition position) {
+        if (!(position instanceof KeysetScrollPosition keyset)) {
+            throw new IllegalArgumentException("Only keyset positions can be encoded");
+        }
+        var joiner = new StringJoiner(";");
+        keyset.getKeys().forEach((key, value) -> joiner.add(key + "=" + value));
+        return ENCODER.encodeToString(joiner.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /// Cursor must have been issued for the same sort, otherwise the keys don't line up
+    public static ScrollPosition decode(String cursor, String sort) {
+        if (cursor == null || cursor.isBlank()) return ScrollPosition.keyset();
+
+        Map<String, Object> keys = new LinkedHashMap<>();
+        try {
+            String raw = new String(DECODER.decode(cursor), StandardCharsets.UTF_8);
+            for (String pair : raw.split(";")) {
+                int eq = pair.indexOf('=');
+                String key = pair.substring(0, eq);
+                keys.put(key, parseValue(key, pair.substring(eq + 1)));
+            }
+        } catch (RuntimeException e) {
+            throw new InvalidCursorException("Malformed cursor");
+        }
+
+        if (!keys.containsKey(sort) || !keys.containsKey("id")) {
+            throw new InvalidCursorException("Cursor does not match sort '" + sort + "'");
+        }
+        return ScrollPosition.forward(keys);
+    }
+
+    private static Object parseValue(String key, String value) {
+        return switch (key) {
+            case "id" -> Long.valueOf(value);
+            case "startTime" -> OffsetDateTime.parse(value);
+            case "status" -> BookingStatus.valueOf(value);
+            default -> throw new InvalidCursorException("Unknown cursor key " + key);
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package chrisgreer.bookingsystem.utils;
+
+import chrisgreer.bookingsystem.model.SlotRange;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/// Slot time ranges ordered by start, for O(log n) clash checks.
+///
+/// Live slots never overlap each other (booking_no_overlap), so this doesn't need a full interval tree:
+/// the only stored slot that can overlap [start, end) is the last one starting before end.
+/// Safe for concurrent use.
+public class SlotIntervalIndex {
+
+    private final ConcurrentSkipListMap<Instant, SlotRange> byStart = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<Long, Instant> startById = new ConcurrentHashMap<>();
+
+    public Optional<SlotRange> findOverlap(OffsetDateTime start, OffsetDateTime end) {
+        var candidate = byStart.lowerEntry(end.toInstant());
+        if (candidate == null) return Optional.empty();
+
+        var slot = candidate.getValue();
+        return slot.endTime().toInstant().isAfter(start.toInstant())
+                ? Optional.of(slot)
+                : Optional.empty();
+    }
+
+    public void put(SlotRange slot) {
+        if (slot.id() != null) remove(slot.id());
+        Instant start = slot.startTime().toInstant();
+        byStart.put(start, slot);
+        if (slot.id() != null) startById.put(slot.id(), start);
+    }
+
+    public void remove(Long id) {
+        Instant start = startById.remove(id);
+        //Only if it's still this slot at that start
+        if (start != null) byStart.computeIfPresent(start, (k, slot) -> id.equals(slot.id()) ? null : slot);
+    }
+
+    public int size() {
+        return byStart.size();
+    }
+}
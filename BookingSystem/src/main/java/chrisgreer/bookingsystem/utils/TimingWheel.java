@@ -0,0 +1,147 @@
+package chrisgreer.bookingsystem.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/// Hierarchical timing wheel: O(1) schedule and cancel, and advancing only touches the buckets that come due.
+///
+/// Level 0 has WHEEL_SIZE buckets of one tick each, every level above has buckets WHEEL_SIZE times wider.
+/// A timer sits in the lowest level whose span covers it, and drops a level each time its bucket comes
+/// round, until it reaches level 0 and fires. With 64 buckets and 5 levels, one second ticks reach ~34 years.
+///
+/// Each bucket is an intrusive doubly linked list, and the key map points straight at the node, so cancel
+/// and reschedule never search. Safe for concurrent use (one lock, nothing slow is done holding it).
+public class TimingWheel<K> {
+
+    private static final int BITS = 6;
+    private static final int WHEEL_SIZE = 1 << BITS;
+    private static final int MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 5;
+
+    private final long tickMillis;
+    private final Node<K>[][] buckets;
+    private final Map<K, Node<K>> nodes = new HashMap<>();
+    //Scheduled at or before the current tick, fired on the next advance
+    private final Node<K> overdue = Node.head();
+    private long currentTick;
+
+    private static final class Node<K> {
+        final K key;
+        final long dueTick;
+        Node<K> prev;
+        Node<K> next;
+
+        Node(K key, long dueTick) {
+            this.key = key;
+            this.dueTick = dueTick;
+        }
+
+        static <K> Node<K> head() {
+            Node<K> head = new Node<>(null, 0);
+            head.prev = head;
+            head.next = head;
+            return head;
+        }
+
+        void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = next = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        this.buckets = new Node[LEVELS][WHEEL_SIZE];
+        for (Node<K>[] level : buckets) {
+            for (int i = 0; i < WHEEL_SIZE; i++) level[i] = Node.head();
+        }
+    }
+
+    /// Replaces any timer already scheduled under the key. A due time in the past fires on the next advance.
+    public synchronized void schedule(K key, long dueMillis) {
+        cancel(key);
+        //Rounded up, a timer never fires before its time
+        var node = new Node<>(key, Math.ceilDiv(dueMillis, tickMillis));
+        nodes.put(key, node);
+        place(node);
+    }
+
+    public synchronized boolean cancel(K key) {
+        Node<K> node = nodes.remove(key);
+        if (node == null) return false;
+        node.unlink();
+        return true;
+    }
+
+    public synchronized boolean contains(K key) {
+        return nodes.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /// Moves the wheel up to now and returns the keys that came due, earliest first
+    public synchronized List<K> advance(long nowMillis) {
+        List<K> due = new ArrayList<>();
+        drain(overdue, due);
+
+        long target = nowMillis / tickMillis;
+        while (currentTick < target) {
+            currentTick++;
+            //Highest first, a timer cascading out of level 2 may land in level 1's bucket for this same tick
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (BITS * level)) - 1)) == 0) cascade(level);
+            }
+            drain(buckets[0][(int) (currentTick & MASK)], due);
+        }
+        return due;
+    }
+
+    private void place(Node<K> node) {
+        long delta = node.dueTick - currentTick;
+        if (delta <= 0) {
+            append(overdue, node);
+            return;
+        }
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) level++;
+        append(buckets[level][(int) ((node.dueTick >>> (BITS * level)) & MASK)], node);
+    }
+
+    //Re-places everything in the bucket that just came round, each timer drops to a lower level
+    //(or stays put if it's beyond the top level's span, and gets looked at again next rotation)
+    private void cascade(int level) {
+        Node<K> head = buckets[level][(int) ((currentTick >>> (BITS * level)) & MASK)];
+        Node<K> node = head.next;
+        head.next = head.prev = head;
+        while (node != head) {
+            Node<K> next = node.next;
+            //Due on this very tick, level 0's bucket for it is drained straight after
+            if (node.dueTick == currentTick) append(buckets[0][(int) (currentTick & MASK)], node);
+            else place(node);
+            node = next;
+        }
+    }
+
+    private void drain(Node<K> head, List<K> due) {
+        while (head.next != head) {
+            Node<K> node = head.next;
+            node.unlink();
+            nodes.remove(node.key);
+            due.add(node.key);
+        }
+    }
+
+    private static <K> void append(Node<K> head, Node<K> node) {
+        node.prev = head.prev;
+        node.next = head;
+        head.prev.next = node;
+        head.prev = node;
+    }
+}
@@ -0,0 +1,101 @@
+package chrisgreer.bookingsystem.utils;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/// One token bucket per key (client address), for rate limiting.
+///
+/// Each bucket is a single AtomicLong holding the time it will next be full again (the GCRA form
+/// of a token bucket), so taking a token is a map get and a CAS, with no locks. A bucket at or
+/// before that time is full and holds nothing worth keeping, which is what makes it safe to evict.
+///
+/// Memory is bounded: keys are split over stripes of at most maxKeys / STRIPES buckets each. A full
+/// stripe first drops its idle buckets, and if they're all still in use the newcomer shares
+/// the stripe's overflow bucket instead (so a flood of new addresses is still limited, together).
+/// Times are System.nanoTime values, passed in so tests can run on a simulated clock. They're only
+/// ever compared by their difference, nanoTime may be negative and may wrap.
+public class TokenBuckets {
+
+    private static final int STRIPES = 16;
+    //Never full, so the first take is always let through
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final int maxPerStripe;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private static final class Stripe {
+        final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+        final AtomicLong overflow = new AtomicLong(EMPTY);
+        final AtomicLong nextSweep = new AtomicLong(EMPTY);
+    }
+
+    /// burst requests at once, then one more every per / tokens
+    public TokenBuckets(int burst, int tokens, Duration per, int maxKeys) {
+        if (burst < 1 || tokens < 1 || maxKeys < STRIPES) {
+            throw new IllegalArgumentException("burst and tokens must be positive and maxKeys at least " + STRIPES);
+        }
+        this.intervalNanos = Math.max(1, per.toNanos() / tokens);
+        this.burstNanos = intervalNanos * burst;
+        this.maxPerStripe = maxKeys / STRIPES;
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
+    }
+
+    /// Takes a token for the key. 0 if there was one, otherwise the nanos until there will be
+    public long tryAcquire(String key, long nowNanos) {
+        Stripe stripe = stripeFor(key);
+        AtomicLong bucket = stripe.buckets.get(key);
+        if (bucket == null) bucket = admit(stripe, key, nowNanos);
+
+        while (true) {
+            long fullAt = bucket.get();
+            long next = (reached(fullAt, nowNanos) ? nowNanos : fullAt) + intervalNanos;
+            long wait = next - nowNanos - burstNanos;
+            if (wait > 0) return wait;
+            if (bucket.compareAndSet(fullAt, next)) return 0;
+        }
+    }
+
+    /// Drops the buckets that have refilled. A take racing the removal can win one extra token, that's all
+    public int evictIdle(long nowNanos) {
+        int evicted = 0;
+        for (Stripe stripe : stripes) evicted += sweep(stripe, nowNanos);
+        return evicted;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) size += stripe.buckets.size();
+        return size;
+    }
+
+    private AtomicLong admit(Stripe stripe, String key, long nowNanos) {
+        if (stripe.buckets.size() >= maxPerStripe) {
+            //At most one sweep per token interval, so a flood of new addresses isn't a sweep per request
+            long due = stripe.nextSweep.get();
+            if (reached(due, nowNanos) && stripe.nextSweep.compareAndSet(due, nowNanos + intervalNanos)) {
+                sweep(stripe, nowNanos);
+            }
+            if (stripe.buckets.size() >= maxPerStripe) return stripe.overflow;
+        }
+        return stripe.buckets.computeIfAbsent(key, k -> new AtomicLong(EMPTY));
+    }
+
+    private static int sweep(Stripe stripe, long nowNanos) {
+        int before = stripe.buckets.size();
+        stripe.buckets.values().removeIf(bucket -> reached(bucket.get(), nowNanos));
+        return Math.max(0, before - stripe.buckets.size());
+    }
+
+    private static boolean reached(long time, long nowNanos) {
+        return time == EMPTY || time - nowNanos <= 0;
+    }
+
+    private Stripe stripeFor(String key) {
+        int h = key.hashCode();
+        //Spread the high bits down, as ConcurrentHashMap does
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+}
@@ -0,0 +1,52 @@
+package chrisgreer.bookingsystem.validation;
+
+import chrisgreer.bookingsystem.dtos.CreateRecurringSlotsDto;
+import jakarta.validation.ConstraintValidator;
+import jakarta.validation.ConstraintValidatorContext;
+
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.ZoneId;
+
+public class DayRangeValidator implements ConstraintValidator<ValidDayRange, CreateRecurringSlotsDto> {
+
+    public static final int MAX_SLOTS = 20_000;
+
+    @Override
+    public boolean isValid(CreateRecurringSlotsDto dto, ConstraintValidatorContext context) {
+        if(dto == null) return true;
+
+        var dayStart = dto.getDayStart();
+        var dayEnd = dto.getDayEnd();
+
+        if (dayStart != null && dayEnd != null && !dayStart.isBefore(dayEnd)) {
+            return reject(context, "dayStart", "Day start must be before day end");
+        }
+
+        //Keep a single request to a sensible size
+        if (dayStart != null && dayEnd != null && dto.getDaysOfWeek() != null && dto.getSlotMinutes() > 0) {
+            long slotsPerDay = Duration.between(dayStart, dayEnd).toMinutes() / dto.getSlotMinutes();
+            long total = slotsPerDay * dto.getDaysOfWeek().size() * dto.getWeeks();
+            if (total > MAX_SLOTS) {
+                return reject(context, "weeks", "Rule would create more than " + MAX_SLOTS + " slots");
+            }
+        }
+
+        if (dto.getTimeZone() != null) {
+            try {
+                ZoneId.of(dto.getTimeZone());
+            } catch (DateTimeException e) {
+                return reject(context, "timeZone", "Must be a valid time zone, e.g. Europe/London");
+            }
+        }
+        return true;
+    }
+
+    private boolean reject(ConstraintValidatorContext context, String field, String message) {
+        context.disableDefaultConstraintViolation();
+        context.buildConstraintViolationWithTemplate(message)
+                .addPropertyNode(field)
+                .addConstraintViolation();
+        return false;
+    }
+}
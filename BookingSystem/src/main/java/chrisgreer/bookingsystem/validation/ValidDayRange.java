@@ -0,0 +1,18 @@
+package chrisgreer.bookingsystem.validation;
+
+
+import jakarta.validation.Constraint;
+import jakarta.validation.Payload;
+
+import java.lang.annotation.*;
+
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Constraint(validatedBy = DayRangeValidator.class)
+public @interface ValidDayRange {
+    String message() default "Day start must be before day end";
+
+    Class<?>[] groups() default {};
+    Class<? extends Payload>[] payload() default {};
+}
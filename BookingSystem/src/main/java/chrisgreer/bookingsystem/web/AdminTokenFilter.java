@@ -0,0 +1,51 @@
+package chrisgreer.bookingsystem.web;
+
+import chrisgreer.bookingsystem.controllers.AuthController;
+import chrisgreer.bookingsystem.services.AdminTokenService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/// Authenticates "Authorization: Bearer <token>" from AdminTokenService.
+/// Anything else passes through untouched for httpBasic (or a 401) to deal with.
+/// Not a bean on purpose, Boot would also register it as a servlet filter outside the security chain.
+@RequiredArgsConstructor
+public class AdminTokenFilter extends OncePerRequestFilter {
+
+    private static final String PREFIX = AdminTokenService.TOKEN_TYPE + " ";
+
+    private final AdminTokenService tokenService;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header != null && header.startsWith(PREFIX)) {
+            tokenService.verify(header.substring(PREFIX.length())).ifPresent(username -> {
+                var authentication = UsernamePasswordAuthenticationToken.authenticated(
+                        username, null, AuthorityUtils.createAuthorityList("ROLE_ADMIN"));
+                var context = SecurityContextHolder.createEmptyContext();
+                context.setAuthentication(authentication);
+                SecurityContextHolder.setContext(context);
+            });
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    //A token can't mint the next one, that still needs the password
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().equals(request.getContextPath() + AuthController.TOKEN_PATH);
+    }
+}
@@ -0,0 +1,37 @@
+package chrisgreer.bookingsystem.web;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/// Validators and 304s for the listings.
+/// Cache-Control is set here because Spring Security otherwise sends no-store,
+/// and a browser that can't keep the body never sends If-None-Match.
+public class ConditionalGet {
+
+    //Keep the body but check back every time
+    public static final CacheControl PUBLIC = CacheControl.noCache();
+    //Same, just never in a shared cache
+    public static final CacheControl PRIVATE = CacheControl.noCache().cachePrivate();
+
+    /// Sets ETag, Last-Modified and Cache-Control either way, true (with the 304 set) if the client's copy is current
+    public static boolean notModified(ServletWebRequest request, String etag, long lastModifiedMillis,
+                                      CacheControl cacheControl) {
+        var response = request.getResponse();
+        if (response != null) response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+        return request.checkNotModified(etag, lastModifiedMillis);
+    }
+
+    /// Good enough for Accept-Encoding, ignores anything but an explicit q=0
+    public static boolean acceptsGzip(ServletWebRequest request) {
+        String accepted = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (accepted == null) return false;
+        for (String coding : accepted.split(",")) {
+            String value = coding.trim().toLowerCase();
+            if ((value.equals("gzip") || value.startsWith("gzip;")) && !value.replace(" ", "").endsWith("q=0")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,5 +1,10 @@
 package chrisgreer.bookingsystem.web;
 
+import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.exceptions.InvalidCursorException;
+import chrisgreer.bookingsystem.exceptions.InvalidDateRangeException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -39,4 +44,23 @@ public class GlobalExceptionHandler {
         return ResponseEntity.badRequest().body(body);
     }
 
+    @ExceptionHandler({InvalidCursorException.class, InvalidDateRangeException.class})
+    public ResponseEntity<Map<String, String>> handleInvalidQuery(RuntimeException ex) {
+
+        Map<String, String> body = new LinkedHashMap<>();
+        body.put("error", ex.getMessage());
+        return ResponseEntity.badRequest().body(body);
+    }
+
+    //Slots that passed the pre-check but lost a race to an overlapping insert
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ResponseEntity<Map<String, String>> handleIntegrityViolation(DataIntegrityViolationException ex) {
+        String cause = String.valueOf(ex.getMostSpecificCause().getMessage());
+        if (!cause.contains(Booking.NO_OVERLAP_CONSTRAINT)) throw ex;
+
+        Map<String, String> body = new LinkedHashMap<>();
+        body.put("error", "Slot overlaps an existing slot");
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(body);
+    }
+
 }
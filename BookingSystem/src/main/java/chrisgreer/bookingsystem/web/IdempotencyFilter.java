@@ -0,0 +1,227 @@
+package chrisgreer.bookingsystem.web;
+
+import chrisgreer.bookingsystem.model.IdempotentResponse;
+import chrisgreer.bookingsystem.services.IdempotencyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+
+/// Makes booking mutations sent with an Idempotency-Key header safe to retry.
+///
+/// The first request with a key runs as normal and its response is stored (IdempotencyService).
+/// A retry with the same key gets that response back as is, marked Idempotent-Replayed, without
+/// reaching the controller: no repository calls, no second email, and no 409 for a claim it already won.
+/// 5xx responses aren't stored, so those can be retried for real.
+///
+/// Keys belong to the caller (the login, or the client address for anonymous requests), so two clients
+/// picking the same key never see each other's responses. The stored request is the method, URI and a
+/// hash of the body: the same key sent again with anything different is a 422, never a replay.
+///
+/// Sits after authorization in the security chain, so a replay is never a way round the login.
+/// Not a bean on purpose, for the same reason as AdminTokenFilter.
+@RequiredArgsConstructor
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 100;
+    //Booking bodies are a few hundred bytes, this only stops the whole of a huge one being held to hash it
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final Set<String> MUTATIONS = Set.of(
+            HttpMethod.POST.name(), HttpMethod.PATCH.name(), HttpMethod.PUT.name(), HttpMethod.DELETE.name());
+
+    private final IdempotencyService idempotencyService;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getHeader(KEY_HEADER) == null
+                || !MUTATIONS.contains(request.getMethod())
+                || !request.getRequestURI().startsWith(request.getContextPath() + "/booking/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        String key = request.getHeader(KEY_HEADER).strip();
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            writeError(response, HttpStatus.BAD_REQUEST, KEY_HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+            return;
+        }
+        byte[] requestBody = request.getInputStream().readNBytes(MAX_BODY_BYTES + 1);
+        if (requestBody.length > MAX_BODY_BYTES) {
+            writeError(response, HttpStatus.PAYLOAD_TOO_LARGE, "Request body is over " + MAX_BODY_BYTES + " bytes");
+            return;
+        }
+        key = sha256(caller(request) + "\n" + key);
+        String fingerprint = request.getMethod() + " " + request.getRequestURI() + " " + sha256(requestBody);
+        request = new CachedBodyRequest(request, requestBody);
+
+        var stored = idempotencyService.find(key);
+        if (stored.isPresent()) {
+            replay(stored.get(), fingerprint, response);
+            return;
+        }
+
+        if (!idempotencyService.claim(key, fingerprint)) {
+            //Either it finished between the two looks, or the first request is still running
+            stored = idempotencyService.find(key);
+            if (stored.isPresent()) replay(stored.get(), fingerprint, response);
+            else writeError(response, HttpStatus.CONFLICT, "A request with this " + KEY_HEADER + " is still in progress");
+            return;
+        }
+
+        var wrapper = new ContentCachingResponseWrapper(response);
+        boolean completed = false;
+        try {
+            filterChain.doFilter(request, wrapper);
+            if (wrapper.getStatus() < 500) {
+                idempotencyService.complete(key, fingerprint, wrapper.getStatus(),
+                        wrapper.getContentType(), wrapper.getContentAsByteArray());
+                completed = true;
+            }
+        } finally {
+            if (!completed) idempotencyService.release(key);
+            wrapper.copyBodyToResponse();
+        }
+    }
+
+    private void replay(IdempotentResponse stored, String fingerprint, HttpServletResponse response) throws IOException {
+        //Same key for a different request is a client bug, don't answer it with another request's response
+        if (!stored.request().equals(fingerprint)) {
+            String used = stored.request().substring(0, stored.request().lastIndexOf(' '));
+            writeError(response, HttpStatus.UNPROCESSABLE_ENTITY, KEY_HEADER + " was already used for "
+                    + (fingerprint.startsWith(used + " ") ? "a different body" : used));
+            return;
+        }
+        response.setStatus(stored.status());
+        response.setHeader(REPLAYED_HEADER, "true");
+        if (stored.contentType() != null) response.setContentType(stored.contentType());
+        if (stored.body() != null && stored.body().length > 0) {
+            response.setContentLength(stored.body().length);
+            response.getOutputStream().write(stored.body());
+        }
+    }
+
+    private static String caller(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return "user:" + authentication.getName();
+        }
+        return "address:" + request.getRemoteAddr();
+    }
+
+    //Fits the key column whatever went in, and keeps the body itself out of the table
+    private static String sha256(String value) {
+        return sha256(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sha256(byte[] value) {
+        try {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(MessageDigest.getInstance("SHA-256").digest(value));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    private void writeError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), Map.of("error", message));
+    }
+
+    /// The body was read up front for its hash, this hands it on to the controller
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            var in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                //All of it is already here, so it's available at once and read in one go
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    try {
+                        listener.onDataAvailable();
+                        listener.onAllDataRead();
+                    } catch (IOException ex) {
+                        listener.onError(ex);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body),
+                    encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package chrisgreer.bookingsystem.web;
+
+import chrisgreer.bookingsystem.services.RateLimitService;
+import chrisgreer.bookingsystem.services.RateLimitService.Route;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/// Turns away clients going over their RateLimitService allowance on the permitAll endpoints
+/// with a 429 and Retry-After, before they get anywhere near the database.
+///
+/// Keyed on the remote address, which is the real client behind the Fly proxy because
+/// server.forward-headers-strategy is native. Not a bean on purpose, for the same reason as AdminTokenFilter.
+@RequiredArgsConstructor
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimitService rateLimitService;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return routeOf(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        long waitNanos = rateLimitService.admit(routeOf(request), request.getRemoteAddr());
+        if (waitNanos == 0) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        long seconds = Math.ceilDiv(waitNanos, TimeUnit.SECONDS.toNanos(1));
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), Map.of("error", "Too many requests, try again in " + seconds + "s"));
+    }
+
+    //The same endpoints SecurityConfig lets anyone call
+    private static Route routeOf(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String method = request.getMethod();
+        if (HttpMethod.GET.matches(method) && path.startsWith("/booking/public")) return Route.PUBLIC;
+        if (HttpMethod.PATCH.matches(method) && path.startsWith("/booking/request/")) return Route.REQUEST;
+        return null;
+    }
+}
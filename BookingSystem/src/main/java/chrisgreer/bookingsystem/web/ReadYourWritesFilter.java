@@ -0,0 +1,95 @@
+package chrisgreer.bookingsystem.web;
+
+import chrisgreer.bookingsystem.config.ReplicaRoutingDataSource;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseCookie;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/// Read-your-writes over a lagging replica: for a short window after a client's own successful
+/// mutation, its reads are pinned to the primary (ReplicaRoutingDataSource), so an admin who just
+/// confirmed a booking doesn't get the old listing back.
+///
+/// A mutation answers with a Written-At cookie holding when it was made, lasting the window. A request
+/// that sends it back is pinned while that time is inside the window, from whatever address it comes
+/// (a phone moving between networks), and nobody else sharing that address is (clients behind one NAT).
+/// The admin page is on another site than the API, so the cookie is SameSite=None (and so Secure) for
+/// its credentialed fetches to carry it. Nothing is kept here, the window is all in the cookie.
+/// Not a bean on purpose, for the same reason as AdminTokenFilter.
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    public static final String WRITTEN_COOKIE = "Written-At";
+
+    private final long windowMillis;
+
+    public ReadYourWritesFilter(Duration window) {
+        this.windowMillis = window.toMillis();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        //Set before the chain, the response may be committed by the time it returns. A failed write
+        //pinned for nothing only costs the primary a few reads
+        if (isMutation(request)) writeCookie(request, response);
+
+        if (!pinned(request)) {
+            filterChain.doFilter(request, response);
+        } else {
+            boolean previous = ReplicaRoutingDataSource.pin();
+            try {
+                filterChain.doFilter(request, response);
+            } finally {
+                ReplicaRoutingDataSource.restore(previous);
+            }
+        }
+    }
+
+    private boolean pinned(HttpServletRequest request) {
+        Long writtenAt = writtenAt(request);
+        if (writtenAt == null) return false;
+        //Another node's clock may be a little ahead, one far off is a made up cookie
+        long age = System.currentTimeMillis() - writtenAt;
+        return Math.abs(age) < windowMillis;
+    }
+
+    private static Long writtenAt(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) return null;
+        for (Cookie cookie : cookies) {
+            if (!WRITTEN_COOKIE.equals(cookie.getName())) continue;
+            try {
+                return Long.parseLong(cookie.getValue());
+            } catch (NumberFormatException ignored) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private void writeCookie(HttpServletRequest request, HttpServletResponse response) {
+        var cookie = ResponseCookie.from(WRITTEN_COOKIE, Long.toString(System.currentTimeMillis()))
+                .path(request.getContextPath().isEmpty() ? "/" : request.getContextPath())
+                .maxAge(Duration.ofMillis(windowMillis).plusSeconds(1).toSeconds())
+                .httpOnly(true)
+                .secure(true)
+                .sameSite("None")
+                .build();
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+
+    private static boolean isMutation(HttpServletRequest request) {
+        String method = request.getMethod();
+        return !(HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method) || HttpMethod.OPTIONS.matches(method));
+    }
+}
@@ -3,10 +3,18 @@ package chrisgreer.bookingsystem.web;
 import chrisgreer.bookingsystem.model.ServiceResult;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 public class ResponseMapper {
 
+    public static final String RESULT_ATTRIBUTE = ResponseMapper.class.getName() + ".result";
+
     public static ResponseEntity<Void> toResponse(ServiceResult result) {
+        //Picked up as the "result" tag on http.server.requests
+        var attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) attributes.setAttribute(RESULT_ATTRIBUTE, result, RequestAttributes.SCOPE_REQUEST);
+
         return switch (result) {
             case SUCCESS -> ResponseEntity.noContent().build();
             case NOT_FOUND -> ResponseEntity.notFound().build();
@@ -15,4 +23,12 @@ public class ResponseMapper {
         };
     }
 
+    /// Same statuses, with a body explaining a failure (e.g. the slot a create clashed with)
+    public static <T> ResponseEntity<T> toResponse(ServiceResult result, T body) {
+        var status = toResponse(result).getStatusCode();
+        return result == ServiceResult.SUCCESS || body == null
+                ? ResponseEntity.status(status).build()
+                : ResponseEntity.status(status).body(body);
+    }
+
 }
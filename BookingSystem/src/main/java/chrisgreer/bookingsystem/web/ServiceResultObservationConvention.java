@@ -0,0 +1,17 @@
+package chrisgreer.bookingsystem.web;
+
+import io.micrometer.common.KeyValues;
+import org.springframework.http.server.observation.DefaultServerRequestObservationConvention;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+
+/// Adds the ServiceResult (or "none") to http.server.requests, so a 409 from a lost claim
+/// can be told apart from any other conflict when reading the timers
+public class ServiceResultObservationConvention extends DefaultServerRequestObservationConvention {
+
+    @Override
+    public KeyValues getLowCardinalityKeyValues(ServerRequestObservationContext context) {
+        Object result = context.getCarrier().getAttribute(ResponseMapper.RESULT_ATTRIBUTE);
+        return super.getLowCardinalityKeyValues(context)
+                .and("result", result != null ? result.toString() : "none");
+    }
+}
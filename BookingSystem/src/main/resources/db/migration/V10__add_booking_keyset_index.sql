@@ -0,0 +1,3 @@
+-- Admin listing without a status filter scrolls on (start_time, id)
+CREATE INDEX IF NOT EXISTS idx_booking_deleted_start_id
+    ON booking (deleted, start_time, id);
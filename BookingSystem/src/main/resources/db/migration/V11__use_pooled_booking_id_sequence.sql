@@ -0,0 +1,3 @@
+-- Hibernate hands out ids from blocks of 50 (pooled optimiser) so inserts can be JDBC batched.
+-- Plain inserts using the column default still work, they just take the top of a block.
+ALTER SEQUENCE booking_id_seq INCREMENT BY 50;
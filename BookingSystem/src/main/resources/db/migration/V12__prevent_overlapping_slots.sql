@@ -0,0 +1,21 @@
+-- Live slots may not overlap. Ranges are half open, so back to back slots are fine.
+
+-- Existing clashes first: an unbooked slot overlapping a booked one, or an older one, is soft deleted.
+-- Two booked slots overlapping are left alone on purpose, the constraint then fails and they need sorting by hand.
+UPDATE booking b
+SET deleted = true
+WHERE b.deleted = false
+  AND b.status = 'AVAILABLE'
+  AND EXISTS (
+      SELECT 1 FROM booking o
+      WHERE o.deleted = false
+        AND o.id <> b.id
+        AND (o.status <> 'AVAILABLE' OR o.id < b.id)
+        AND tstzrange(o.start_time, o.end_time, '[)') && tstzrange(b.start_time, b.end_time, '[)')
+  );
+
+-- The GiST index behind this also serves the overlap lookups
+ALTER TABLE booking
+    ADD CONSTRAINT booking_no_overlap
+    EXCLUDE USING gist (tstzrange(start_time, end_time, '[)') WITH &&)
+    WHERE (deleted = false);
@@ -0,0 +1,5 @@
+-- The public calendar only ever reads live AVAILABLE slots by start time.
+-- Queries must use these literals (not parameters) for the planner to pick this index.
+CREATE INDEX IF NOT EXISTS idx_booking_available_start
+    ON booking (start_time)
+    WHERE status = 'AVAILABLE' AND deleted = false;
@@ -0,0 +1,25 @@
+-- Conditional GETs compare max(last_modified_at) over a view, so stamp rows on insert as well as update,
+-- and with the statement's clock rather than now() (the transaction start, which can be well before commit)
+CREATE OR REPLACE FUNCTION set_last_modified_at()
+RETURNS trigger AS $$
+BEGIN
+    NEW.last_modified_at := clock_timestamp();
+RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+ALTER TABLE booking
+    ALTER COLUMN last_modified_at SET DEFAULT clock_timestamp();
+
+DROP TRIGGER IF EXISTS trg_set_last_modified_at ON booking;
+
+CREATE TRIGGER trg_set_last_modified_at
+    BEFORE INSERT OR UPDATE ON booking
+    FOR EACH ROW
+    EXECUTE FUNCTION set_last_modified_at();
+
+-- Lets the public list's probe (max/count over available slots) run as an index-only scan
+DROP INDEX IF EXISTS idx_booking_available_start;
+CREATE INDEX idx_booking_available_start
+    ON booking (start_time) INCLUDE (last_modified_at)
+    WHERE status = 'AVAILABLE' AND deleted = false;
@@ -0,0 +1,39 @@
+-- Cold storage for bookings that are over or deleted, so the hot table (and its indexes) only hold
+-- what's live. Rows are moved by BookingArchiveService, keeping their id and last_modified_at.
+-- Range partitioned by start_time, one partition per UTC year, created by the job before it moves
+-- rows into that year. Deliberately no default partition: rows parked there would stop the year's
+-- partition being created later.
+CREATE TABLE booking_archive (
+    id INTEGER NOT NULL,
+    name VARCHAR(250),
+    email VARCHAR(150),
+    phone_number VARCHAR(100),
+    topic TEXT,
+    notes TEXT,
+    start_time TIMESTAMPTZ NOT NULL,
+    end_time TIMESTAMPTZ NOT NULL,
+    time_zone VARCHAR(100),
+    status VARCHAR(20) NOT NULL,
+    created_at TIMESTAMPTZ,
+    last_modified_at TIMESTAMPTZ NOT NULL,
+    deleted BOOLEAN NOT NULL,
+    archived_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    PRIMARY KEY (id, start_time)
+) PARTITION BY RANGE (start_time);
+
+-- Same shape as idx_booking_deleted_start_id, plus the stamp so the listing probes stay index-only
+CREATE INDEX idx_booking_archive_deleted_start_id
+    ON booking_archive (deleted, start_time, id) INCLUDE (last_modified_at);
+
+-- What the admin listing and export read when they reach into the past or the deleted rows.
+-- A row is only ever in one of the two tables (the move is one statement), so UNION ALL is exact.
+-- Column types have to match booking's exactly (id is INTEGER there too), otherwise Postgres can't
+-- flatten the UNION ALL and a keyset page becomes a full scan and sort instead of a merge of index scans.
+CREATE VIEW booking_history AS
+SELECT id, name, email, phone_number, topic, notes, start_time, end_time, time_zone, status,
+       created_at, last_modified_at, deleted
+FROM booking
+UNION ALL
+SELECT id, name, email, phone_number, topic, notes, start_time, end_time, time_zone, status,
+       created_at, last_modified_at, deleted
+FROM booking_archive;
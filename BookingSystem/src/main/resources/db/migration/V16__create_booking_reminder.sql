@@ -0,0 +1,8 @@
+-- One row per reminder that has gone out (ReminderService). Claimed with an insert in the same
+-- transaction that queues the email, so a restart or a second node can't send it twice.
+CREATE TABLE booking_reminder (
+    booking_id INTEGER NOT NULL,
+    minutes_before INTEGER NOT NULL,
+    sent_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    PRIMARY KEY (booking_id, minutes_before)
+);
@@ -0,0 +1,14 @@
+-- Responses to mutations sent with an Idempotency-Key header (IdempotencyFilter), replayed on retries.
+-- status is null while the first request is still running. Until then expires_at is a short lease,
+-- so a node dying mid-request doesn't hold the key for the full TTL.
+CREATE TABLE idempotency_key (
+    idempotency_key VARCHAR(100) PRIMARY KEY,
+    request VARCHAR(300) NOT NULL,
+    status INTEGER,
+    content_type VARCHAR(100),
+    body BYTEA,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    expires_at TIMESTAMPTZ NOT NULL
+);
+
+CREATE INDEX idx_idempotency_key_expires ON idempotency_key (expires_at);
@@ -0,0 +1,16 @@
+CREATE TABLE email_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    recipient VARCHAR(150) NOT NULL,
+    subject VARCHAR(250) NOT NULL,
+    body TEXT NOT NULL,
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at timestamptz NOT NULL DEFAULT now(),
+    last_error TEXT,
+    sent_at timestamptz,
+    created_at timestamptz NOT NULL DEFAULT now()
+);
+
+-- Dispatcher only ever looks at unsent rows, keep the index to those
+CREATE INDEX IF NOT EXISTS idx_email_outbox_pending
+    ON email_outbox (next_attempt_at)
+    WHERE sent_at IS NULL;
@@ -0,0 +1,121 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.services.AdminTokenService;
+import chrisgreer.bookingsystem.services.EmailService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class AdminTokenIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AdminTokenService adminTokenService;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    @Value("${admin.username}")
+    private String adminUsername;
+
+    @Value("${admin.password}")
+    private String adminPassword;
+
+    @Test
+    void issueToken_requiresBasicAuth() throws Exception {
+        mockMvc.perform(post("/auth/token"))
+                .andExpect(status().isUnauthorized());
+
+        mockMvc.perform(post("/auth/token").with(httpBasic(adminUsername, "wrong")))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void bearerToken_authenticatesAdminRequests() throws Exception {
+        String token = issueToken();
+
+        mockMvc.perform(get("/booking/admin").header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void tamperedToken_isRejected() throws Exception {
+        String token = issueToken();
+        //Change the first signature character. Not the last, its low bits are padding the decoder ignores
+        int first = token.lastIndexOf('.') + 1;
+        char c = token.charAt(first);
+        String tampered = token.substring(0, first) + (c == 'A' ? 'B' : 'A') + token.substring(first + 1);
+
+        mockMvc.perform(get("/booking/admin").header(HttpHeaders.AUTHORIZATION, "Bearer " + tampered))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/booking/admin").header(HttpHeaders.AUTHORIZATION, "Bearer not-a-token"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void bearerToken_cannotIssueAnotherToken() throws Exception {
+        String token = issueToken();
+
+        mockMvc.perform(post("/auth/token").header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void verify_rejectsExpiredAndForeignTokens() {
+        String secret = "a-test-secret-that-is-long-enough-for-hmac";
+        var expired = new AdminTokenService(secret, Duration.ofSeconds(-1), false);
+        assertTrue(expired.verify(expired.issue("admin").getToken()).isEmpty());
+
+        //Signed with a different key
+        var other = new AdminTokenService(secret + "-other", Duration.ofMinutes(5), false);
+        assertTrue(adminTokenService.verify(other.issue("admin").getToken()).isEmpty());
+
+        var valid = new AdminTokenService(secret, Duration.ofMinutes(5), false);
+        assertEquals("admin", valid.verify(valid.issue("admin").getToken()).orElseThrow());
+    }
+
+    @Test
+    void shortSecret_isRefused() {
+        assertThrows(IllegalStateException.class, () -> new AdminTokenService("too-short", Duration.ofMinutes(5), false));
+    }
+
+    @Test
+    void missingSecret_isRefused_unlessRandomKeysAreAllowed() {
+        assertThrows(IllegalStateException.class, () -> new AdminTokenService("", Duration.ofMinutes(5), false));
+
+        var random = new AdminTokenService("", Duration.ofMinutes(5), true);
+        assertEquals("admin", random.verify(random.issue("admin").getToken()).orElseThrow());
+    }
+
+    private String issueToken() throws Exception {
+        String body = mockMvc.perform(post("/auth/token").with(httpBasic(adminUsername, adminPassword)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.tokenType").value("Bearer"))
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body).get("token").asText();
+    }
+}
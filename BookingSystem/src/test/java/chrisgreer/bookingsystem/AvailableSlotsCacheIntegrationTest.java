@@ -0,0 +1,124 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.dtos.CreateAvailableSlotDto;
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.services.AvailableSlotsCache;
+import chrisgreer.bookingsystem.services.EmailService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+//Not @Transactional, the cache is only invalidated once a change has committed
+@SpringBootTest
+@AutoConfigureMockMvc(addFilters = false)
+@ActiveProfiles("test")
+public class AvailableSlotsCacheIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private AvailableSlotsCache availableSlotsCache;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    @Value("${booking.public-cache.verify-interval}")
+    private Duration verifyInterval;
+
+    @BeforeEach
+    void clearBookings() {
+        bookingRepository.deleteAll();
+        availableSlotsCache.invalidate();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        bookingRepository.deleteAll();
+    }
+
+    @Test
+    void getAvailableBookings_isServedFromSnapshot_untilChanged() throws Exception {
+        TestUtil.persistAvailableBooking(bookingRepository);
+        availableSlotsCache.invalidate();
+
+        mockMvc.perform(get("/booking/public"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1));
+
+        long missesBefore = availableSlotsCache.stats().getMisses();
+        mockMvc.perform(get("/booking/public"))
+                .andExpect(jsonPath("$.length()").value(1));
+        assertEquals(missesBefore, availableSlotsCache.stats().getMisses());
+
+        createSlot();
+
+        mockMvc.perform(get("/booking/public"))
+                .andExpect(jsonPath("$.length()").value(2));
+        assertEquals(missesBefore + 1, availableSlotsCache.stats().getMisses());
+    }
+
+    @Test
+    void getAvailableBookings_returnsNotModified_forMatchingEtag() throws Exception {
+        TestUtil.persistAvailableBooking(bookingRepository);
+        availableSlotsCache.invalidate();
+
+        String etag = mockMvc.perform(get("/booking/public"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/booking/public").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        createSlot();
+
+        mockMvc.perform(get("/booking/public").header("If-None-Match", etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void getAvailableBookings_picksUpChangesMadeOnAnotherNode() throws Exception {
+        TestUtil.persistAvailableBooking(bookingRepository);
+        availableSlotsCache.invalidate();
+        mockMvc.perform(get("/booking/public"))
+                .andExpect(jsonPath("$.length()").value(1));
+
+        //Straight to the table, as another node would: no change event here
+        TestUtil.persistAvailableBooking(bookingRepository);
+        Thread.sleep(verifyInterval.toMillis() + 50);
+
+        mockMvc.perform(get("/booking/public"))
+                .andExpect(jsonPath("$.length()").value(2));
+    }
+
+    private void createSlot() throws Exception {
+        CreateAvailableSlotDto request = TestUtil.createValidBookingSlot();
+        mockMvc.perform(post("/booking/admin")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isNoContent());
+    }
+}
@@ -0,0 +1,121 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.services.BookingArchiveService;
+import chrisgreer.bookingsystem.services.EmailService;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//No retention, so a deleted row is archived on the next run
+@SpringBootTest(properties = {
+        "booking.archive.retention=0s",
+        "booking.archive.batch-size=2"
+})
+@AutoConfigureMockMvc(addFilters = false)
+@ActiveProfiles("test")
+public class BookingArchiveIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private BookingArchiveService archiveService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    @AfterEach
+    void cleanUp() {
+        bookingRepository.deleteAll();
+        jdbcTemplate.update("DELETE FROM booking_archive");
+    }
+
+    @Test
+    void archive_movesPastAndDeletedRows_andListingsStillSeeThem() throws Exception {
+        Booking upcoming = TestUtil.persistAvailableBooking(bookingRepository);
+        Booking deleted = TestUtil.persistAvailableBooking(bookingRepository);
+        //Two different years, so two partitions
+        Booking lastWeek = persistPastBooking(OffsetDateTime.now().minusWeeks(1));
+        Booking lastYear = persistPastBooking(OffsetDateTime.now().minusYears(1));
+
+        mockMvc.perform(delete("/booking/admin/{id}", deleted.getId()))
+                .andExpect(status().isNoContent());
+
+        String pastEtag = mockMvc.perform(get("/booking/admin?showPast=true"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        //Three rows, in batches of two
+        assertEquals(3, archiveService.archive());
+        assertEquals(0, archiveService.archive());
+
+        assertEquals(List.of(upcoming.getId()),
+                bookingRepository.findAll().stream().map(Booking::getId).toList());
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT count(*) FROM booking_archive", Integer.class));
+
+        //Moving rows doesn't change what the listing shows, so it's still the same version
+        mockMvc.perform(get("/booking/admin?showPast=true").header(HttpHeaders.IF_NONE_MATCH, pastEtag))
+                .andExpect(status().isNotModified());
+
+        assertEquals(List.of(lastYear.getId(), lastWeek.getId(), upcoming.getId()),
+                listedIds("/booking/admin?showPast=true&sort=startTime"));
+        assertEquals(List.of(upcoming.getId()), listedIds("/booking/admin"));
+        assertEquals(List.of(deleted.getId()), listedIds("/booking/admin?showDeleted=true"));
+
+        //Archived rows are read-only
+        mockMvc.perform(delete("/booking/admin/{id}", lastWeek.getId()))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void export_includesArchivedBookings() throws Exception {
+        TestUtil.persistAvailableBooking(bookingRepository);
+        persistPastBooking(OffsetDateTime.now().minusMonths(2));
+        archiveService.archive();
+
+        String body = mockMvc.perform(get("/booking/admin/export"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertEquals(2, body.lines().count());
+    }
+
+    private Booking persistPastBooking(OffsetDateTime start) {
+        Booking booking = TestUtil.createValidBooking();
+        booking.setStartTime(start.truncatedTo(ChronoUnit.HOURS));
+        booking.setEndTime(booking.getStartTime().plusHours(1));
+        return bookingRepository.save(booking);
+    }
+
+    private List<Long> listedIds(String url) throws Exception {
+        String json = mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        List<Number> ids = JsonPath.read(json, "$[*].id");
+        return ids.stream().map(Number::longValue).toList();
+    }
+}
@@ -0,0 +1,86 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.model.ServiceResult;
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.services.BookingService;
+import chrisgreer.bookingsystem.services.EmailService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static chrisgreer.bookingsystem.model.BookingStatus.PENDING;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+//Not @Transactional, every requester needs its own committed transaction
+@SpringBootTest
+@ActiveProfiles("test")
+public class BookingClaimContentionTest {
+
+    private static final int REQUESTERS = 32;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    private Booking slot;
+
+    @AfterEach
+    void cleanUp() {
+        if (slot != null) bookingRepository.deleteById(slot.getId());
+    }
+
+    @Test
+    void parallelRequestsForOneSlot_exactlyOneWins() throws Exception {
+        slot = TestUtil.persistAvailableBooking(bookingRepository);
+
+        ExecutorService pool = Executors.newFixedThreadPool(REQUESTERS);
+        CountDownLatch startGate = new CountDownLatch(1);
+        List<Future<ServiceResult>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < REQUESTERS; i++) {
+                var request = TestUtil.createValidBookingRequest();
+                request.setName("Requester " + i);
+                futures.add(pool.submit(() -> {
+                    startGate.await();
+                    return bookingService.requestBooking(slot.getId(), request);
+                }));
+            }
+            startGate.countDown();
+
+            List<ServiceResult> results = new ArrayList<>();
+            for (var future : futures) results.add(future.get(30, TimeUnit.SECONDS));
+
+            Map<ServiceResult, Long> counts = results.stream()
+                    .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+
+            assertEquals(1L, counts.getOrDefault(ServiceResult.SUCCESS, 0L));
+            assertEquals(REQUESTERS - 1L, counts.getOrDefault(ServiceResult.CONFLICT, 0L));
+        } finally {
+            pool.shutdownNow();
+        }
+
+        //The winner's details are the ones stored, and only they got an email
+        var claimed = bookingRepository.findById(slot.getId()).orElseThrow();
+        assertEquals(PENDING, claimed.getStatus());
+        verify(emailService, times(1)).notifyBookingRequested(any(Booking.class));
+    }
+}
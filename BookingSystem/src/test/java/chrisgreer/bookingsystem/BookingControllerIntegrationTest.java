@@ -1,13 +1,18 @@
 package chrisgreer.bookingsystem;
 
 
+import chrisgreer.bookingsystem.controllers.BookingController;
 import chrisgreer.bookingsystem.dtos.CreateAvailableSlotDto;
+import chrisgreer.bookingsystem.dtos.CreateRecurringSlotsDto;
 import chrisgreer.bookingsystem.dtos.RequestBookingDto;
 import chrisgreer.bookingsystem.dtos.UpdateBookingStatusDto;
 import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.model.BookingStatus;
 import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.services.AvailableSlotsCache;
 import chrisgreer.bookingsystem.services.EmailService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,11 +24,17 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.time.LocalTime;
 import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HashSet;
+import java.util.List;
 
 import static chrisgreer.bookingsystem.model.BookingStatus.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -45,6 +56,9 @@ public class BookingControllerIntegrationTest {
     @Autowired
     private BookingRepository bookingRepository;
 
+    @Autowired
+    private AvailableSlotsCache availableSlotsCache;
+
     @MockitoBean
     private EmailService emailService;
 
@@ -81,6 +95,90 @@ public class BookingControllerIntegrationTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    void createBooking_shouldReturnConflict_withClashingSlot_whenOverlapping() throws Exception {
+        Booking existing = TestUtil.persistAvailableBooking(bookingRepository);
+
+        CreateAvailableSlotDto request = new CreateAvailableSlotDto();
+        request.setStartTime(existing.getStartTime().plusMinutes(30));
+        request.setEndTime(existing.getEndTime().plusMinutes(30));
+
+        mockMvc.perform(post("/booking/admin")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.id").value(existing.getId()));
+    }
+
+    @Test
+    void createBooking_shouldAllowBackToBackSlots() throws Exception {
+        Booking existing = TestUtil.persistAvailableBooking(bookingRepository);
+
+        CreateAvailableSlotDto request = new CreateAvailableSlotDto();
+        request.setStartTime(existing.getEndTime());
+        request.setEndTime(existing.getEndTime().plusHours(1));
+
+        mockMvc.perform(post("/booking/admin")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    void createRecurringSlots_shouldSkipSlotsOverlappingExistingOnes() throws Exception {
+        CreateRecurringSlotsDto request = TestUtil.createWeekdayRecurringSlots();
+        var firstDay = request.getStartDate();
+        while (!request.getDaysOfWeek().contains(firstDay.getDayOfWeek())) firstDay = firstDay.plusDays(1);
+
+        //Straddles the 09:00 and 09:30 slots of the first day
+        var start = ZonedDateTime.of(firstDay, LocalTime.of(9, 15), ZoneId.of(request.getTimeZone())).toOffsetDateTime();
+        Booking existing = TestUtil.createValidBooking();
+        existing.setStartTime(start);
+        existing.setEndTime(start.plusMinutes(30));
+        bookingRepository.save(existing);
+
+        int expected = 5 * 16 * 2;
+        mockMvc.perform(post("/booking/admin/recurring")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created").value(expected - 2))
+                .andExpect(jsonPath("$.skipped").value(2));
+    }
+
+    @Test
+    void createRecurringSlots_shouldExpandRule_andSkipExistingOnRerun() throws Exception {
+        CreateRecurringSlotsDto request = TestUtil.createWeekdayRecurringSlots();
+
+        //Mon-Fri, 09:00-17:00 in 30 minute slots, for 2 weeks
+        int expected = 5 * 16 * 2;
+
+        mockMvc.perform(post("/booking/admin/recurring")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created").value(expected))
+                .andExpect(jsonPath("$.skipped").value(0));
+
+        mockMvc.perform(post("/booking/admin/recurring")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created").value(0))
+                .andExpect(jsonPath("$.skipped").value(expected));
+    }
+
+    @Test
+    void createRecurringSlots_shouldReturnBadRequest_whenDayStartAfterDayEnd() throws Exception {
+        CreateRecurringSlotsDto request = TestUtil.createWeekdayRecurringSlots();
+        request.setDayStart(LocalTime.of(18, 0));
+
+        mockMvc.perform(post("/booking/admin/recurring")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void requestBooking_returnsNotFound_whenBookingDoesNotExist() throws Exception {
         RequestBookingDto request = TestUtil.createValidBookingRequest();
@@ -179,10 +277,65 @@ public class BookingControllerIntegrationTest {
         for(int i = 0 ; i < totalBookings ; i++){
             TestUtil.persistAvailableBooking(bookingRepository);
         }
+        //Written straight to the repository, so the snapshot wouldn't know
+        availableSlotsCache.invalidate();
 
         mockMvc.perform(get("/booking/public"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.length()").value(totalBookings));
+                .andExpect(jsonPath("$.length()").value(totalBookings))
+                //Only the slot times go out publicly
+                .andExpect(jsonPath("$[0].startTime").exists())
+                .andExpect(jsonPath("$[0].name").doesNotExist())
+                .andExpect(jsonPath("$[0].email").doesNotExist());
+    }
+
+    @Test
+    void getAvailableBookings_shouldOnlyReturnSlotsInDateRange() throws Exception {
+        LocalDate day = LocalDate.now().plusYears(1);
+        persistSlotAt(day, 10, AVAILABLE);
+        persistSlotAt(day, 11, AVAILABLE);
+        persistSlotAt(day, 12, PENDING);
+        persistSlotAt(day.plusDays(1), 10, AVAILABLE);
+        persistSlotAt(day.plusDays(40), 10, AVAILABLE);
+
+        mockMvc.perform(get("/booking/public")
+                        .param("from", day.toString())
+                        .param("to", day.plusDays(1).toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3));
+    }
+
+    @Test
+    void getAvailabilitySummary_shouldCountAvailableSlotsPerDay() throws Exception {
+        LocalDate day = LocalDate.now().plusYears(1);
+        persistSlotAt(day, 10, AVAILABLE);
+        persistSlotAt(day, 11, AVAILABLE);
+        persistSlotAt(day, 12, PENDING);
+        persistSlotAt(day.plusDays(1), 10, AVAILABLE);
+        persistSlotAt(day.plusDays(40), 10, AVAILABLE);
+
+        mockMvc.perform(get("/booking/public/summary")
+                        .param("from", day.toString())
+                        .param("to", day.plusDays(30).toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$['" + day + "']").value(2))
+                .andExpect(jsonPath("$['" + day.plusDays(1) + "']").value(1));
+    }
+
+    @Test
+    void getAvailabilitySummary_shouldReturnBadRequest_whenRangeInvalid() throws Exception {
+        LocalDate day = LocalDate.now().plusDays(10);
+
+        mockMvc.perform(get("/booking/public/summary")
+                        .param("from", day.toString())
+                        .param("to", day.minusDays(1).toString()))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(get("/booking/public/summary")
+                        .param("from", day.toString())
+                        .param("to", day.plusYears(1).toString()))
+                .andExpect(status().isBadRequest());
     }
 
     @Test
@@ -198,6 +351,55 @@ public class BookingControllerIntegrationTest {
                 .andExpect(jsonPath("$[0].id").value(firstBooking.getId()));
     }
 
+    @Test
+    void getBookings_shouldPageWithCursor() throws Exception {
+        bookingRepository.deleteAll();
+        int totalBookings = 5;
+        for(int i = 0 ; i < totalBookings ; i++){
+            TestUtil.persistAvailableBooking(bookingRepository);
+        }
+
+        var seen = new HashSet<Integer>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            var builder = get("/booking/admin?sort=startTime&limit=2");
+            if (cursor != null) builder = builder.param("after", cursor);
+
+            var response = mockMvc.perform(builder)
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse();
+
+            List<Integer> ids = JsonPath.read(response.getContentAsString(), "$[*].id");
+            seen.addAll(ids);
+            cursor = response.getHeader(BookingController.NEXT_CURSOR_HEADER);
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(totalBookings, seen.size());
+        assertEquals(3, pages);
+    }
+
+    @Test
+    void getBookings_shouldSortFutureOnlyByOtherFields() throws Exception {
+        bookingRepository.deleteAll();
+        Booking pending = TestUtil.createValidBooking();
+        pending.setStatus(PENDING);
+        bookingRepository.save(pending);
+        Booking available = TestUtil.persistAvailableBooking(bookingRepository);
+
+        mockMvc.perform(get("/booking/admin?sort=status"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(available.getId()))
+                .andExpect(jsonPath("$[1].id").value(pending.getId()));
+    }
+
+    @Test
+    void getBookings_shouldReturnBadRequest_whenCursorInvalid() throws Exception {
+        mockMvc.perform(get("/booking/admin?after=not-a-cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void deleteBooking_shouldReturnNoContent_whenBookingExists() throws Exception {
 
@@ -206,7 +408,11 @@ public class BookingControllerIntegrationTest {
         mockMvc.perform(delete("/booking/admin/{id}", booking.getId()))
                 .andExpect(status().isNoContent());
 
-        assertNull(bookingRepository.findById(booking.getId()).orElse(null));
+        //Soft delete, the row stays until it's archived
+        assertTrue(bookingRepository.findById(booking.getId()).orElseThrow().isDeleted());
+
+        mockMvc.perform(delete("/booking/admin/{id}", booking.getId()))
+                .andExpect(status().isNotFound());
     }
 
     @Test
@@ -243,5 +449,14 @@ public class BookingControllerIntegrationTest {
         Mockito.verify(emailService).notifyBookingRequested(booking);
     }
 
+    private void persistSlotAt(LocalDate day, int hour, BookingStatus status) {
+        var start = day.atTime(hour, 0).atZone(ZoneId.of("Europe/London")).toOffsetDateTime();
+        Booking booking = TestUtil.createValidBooking();
+        booking.setStartTime(start);
+        booking.setEndTime(start.plusHours(1));
+        booking.setStatus(status);
+        bookingRepository.save(booking);
+    }
+
 
 }
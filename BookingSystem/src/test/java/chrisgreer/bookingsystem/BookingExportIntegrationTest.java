@@ -0,0 +1,173 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.model.ExportFormat;
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.services.BookingExportService;
+import chrisgreer.bookingsystem.services.EmailService;
+import chrisgreer.bookingsystem.services.SlowQueryLog;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+//Not @Transactional, the export opens its own read-only transaction for the cursor
+@SpringBootTest
+@AutoConfigureMockMvc(addFilters = false)
+@ActiveProfiles("test")
+public class BookingExportIntegrationTest {
+
+    private static final int TOTAL_ROWS = 20_000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BookingExportService bookingExportService;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    //Every statement goes through it (datasource-proxy), so it sees the export's
+    @MockitoSpyBean
+    private SlowQueryLog slowQueryLog;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    @BeforeEach
+    void clearBookings() {
+        bookingRepository.deleteAllInBatch();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        bookingRepository.deleteAllInBatch();
+    }
+
+    //What keeps memory flat: PgJDBC only reads through a server-side cursor, fetch-size rows at a time,
+    //for a forward-only statement with a fetch size on a connection outside autocommit. Otherwise the
+    //driver pulls the whole result into memory before the first row is written
+    @Test
+    void export_readsThroughServerSideCursor_regardlessOfRowCount() throws Exception {
+        insertRows(TOTAL_ROWS);
+        var exportStatement = new AtomicReference<String>();
+        doAnswer(invocation -> {
+            ExecutionInfo info = invocation.getArgument(0);
+            List<QueryInfo> queries = invocation.getArgument(1);
+            if (queries.get(0).getQuery().contains("booking_history")) {
+                Statement statement = info.getStatement();
+                exportStatement.set("fetchSize=" + statement.getFetchSize()
+                        + " autoCommit=" + statement.getConnection().getAutoCommit()
+                        + " forwardOnly=" + (statement.getResultSetType() == ResultSet.TYPE_FORWARD_ONLY));
+            }
+            return invocation.callRealMethod();
+        }).when(slowQueryLog).afterQuery(any(), any());
+
+        var sink = new LineCountingStream();
+        long rows = bookingExportService.export(ExportFormat.NDJSON, false, sink);
+
+        assertEquals(TOTAL_ROWS, rows);
+        assertEquals(TOTAL_ROWS, sink.newlines);
+        assertEquals("fetchSize=500 autoCommit=false forwardOnly=true", exportStatement.get());
+    }
+
+    @Test
+    void exportCsv_writesHeaderAndOneLinePerBooking() throws Exception {
+        insertRows(3);
+
+        String body = mockMvc.perform(get("/booking/admin/export?format=csv"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("id,name,email"));
+    }
+
+    @Test
+    void exportCsv_neutralisesFormulas_fromRequesters() throws Exception {
+        Instant start = Instant.now().plus(1, ChronoUnit.DAYS);
+        jdbcTemplate.update("""
+                INSERT INTO booking (name, email, phone_number, topic, notes, start_time, end_time, status)
+                VALUES (?, 'bob@example.com', '+441234567890', '@SUM(A1:A9)', '-1+2', ?, ?, 'PENDING')
+                """, "=HYPERLINK(\"http://evil.example\",\"Click\")",
+                Timestamp.from(start), Timestamp.from(start.plus(1, ChronoUnit.HOURS)));
+
+        String body = mockMvc.perform(get("/booking/admin/export?format=csv"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        String row = body.split("\n")[1];
+        assertTrue(row.contains(",\"'=HYPERLINK(\"\"http://evil.example\"\",\"\"Click\"\")\","), row);
+        assertTrue(row.contains(",'+441234567890,"), row);
+        assertTrue(row.contains(",'@SUM(A1:A9),'-1+2,"), row);
+    }
+
+    @Test
+    void export_returnsBadRequest_forUnknownFormat() throws Exception {
+        mockMvc.perform(get("/booking/admin/export?format=xml"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private void insertRows(int count) {
+        Instant start = Instant.now().plus(1, ChronoUnit.DAYS);
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO booking (name, email, start_time, end_time, status) VALUES (?, ?, ?, ?, 'AVAILABLE')",
+                IntStream.range(0, count).boxed().toList(),
+                1000,
+                (ps, i) -> {
+                    //Own hour each, live slots can't overlap
+                    ps.setString(1, "Bob, \"the\" builder");
+                    ps.setString(2, "bob@example.com");
+                    ps.setTimestamp(3, Timestamp.from(start.plus(i, ChronoUnit.HOURS)));
+                    ps.setTimestamp(4, Timestamp.from(start.plus(i + 1, ChronoUnit.HOURS)));
+                }
+        );
+    }
+
+    private static class LineCountingStream extends OutputStream {
+        long newlines = 0;
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') newlines++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') newlines++;
+            }
+        }
+    }
+}
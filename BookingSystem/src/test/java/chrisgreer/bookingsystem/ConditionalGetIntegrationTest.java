@@ -0,0 +1,160 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.dtos.UpdateBookingStatusDto;
+import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.services.AvailableSlotsCache;
+import chrisgreer.bookingsystem.services.EmailService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static chrisgreer.bookingsystem.model.BookingStatus.CONFIRMED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//Not @Transactional, the public snapshot is only dropped after commit
+@SpringBootTest
+@AutoConfigureMockMvc(addFilters = false)
+@ActiveProfiles("test")
+public class ConditionalGetIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private AvailableSlotsCache availableSlotsCache;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    @AfterEach
+    void cleanUp() {
+        bookingRepository.deleteAll();
+    }
+
+    @Test
+    void adminListing_returnsNotModified_untilARowChanges() throws Exception {
+        Booking booking = TestUtil.persistAvailableBooking(bookingRepository);
+        TestUtil.persistAvailableBooking(bookingRepository);
+
+        String etag = mockMvc.perform(get("/booking/admin"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/booking/admin").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        //Another page of the same rows is its own version
+        mockMvc.perform(get("/booking/admin?limit=1").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+
+        UpdateBookingStatusDto update = new UpdateBookingStatusDto();
+        update.setStatus(CONFIRMED);
+        mockMvc.perform(patch("/booking/admin/{id}", booking.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(update)))
+                .andExpect(status().isNoContent());
+
+        String updatedEtag = mockMvc.perform(get("/booking/admin").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(etag, updatedEtag);
+    }
+
+    @Test
+    void adminListing_changesVersion_whenARowIsDeleted() throws Exception {
+        TestUtil.persistAvailableBooking(bookingRepository);
+        Booking newest = TestUtil.persistAvailableBooking(bookingRepository);
+        Booking older = bookingRepository.findAll().stream()
+                .filter(b -> !b.getId().equals(newest.getId())).findFirst().orElseThrow();
+
+        String etag = mockMvc.perform(get("/booking/admin"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        //Doesn't move max(last_modified_at), only the count gives it away
+        mockMvc.perform(delete("/booking/admin/{id}", older.getId()))
+                .andExpect(status().isNoContent());
+
+        mockMvc.perform(get("/booking/admin").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void publicDateRange_returnsNotModified_untilASlotInItChanges() throws Exception {
+        Booking booking = TestUtil.persistAvailableBooking(bookingRepository);
+        String from = booking.getStartTime().toLocalDate().minusDays(1).toString();
+        String to = booking.getStartTime().toLocalDate().plusDays(1).toString();
+
+        String etag = mockMvc.perform(get("/booking/public").param("from", from).param("to", to))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/booking/public").param("from", from).param("to", to)
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(patch("/booking/request/{id}", booking.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(TestUtil.createValidBookingRequest())))
+                .andExpect(status().isNoContent());
+
+        mockMvc.perform(get("/booking/public").param("from", from).param("to", to)
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void publicList_isServedPreGzipped_whenAccepted() throws Exception {
+        for (int i = 0; i < 3; i++) TestUtil.persistAvailableBooking(bookingRepository);
+        availableSlotsCache.invalidate();
+
+        var response = mockMvc.perform(get("/booking/public").header(HttpHeaders.ACCEPT_ENCODING, "br, gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andReturn().getResponse();
+
+        String json;
+        try (var gzip = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            json = new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        List<Object> slots = JsonPath.read(json, "$");
+        assertEquals(3, slots.size());
+
+        //Without Accept-Encoding it's the plain JSON
+        mockMvc.perform(get("/booking/public"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING));
+    }
+}
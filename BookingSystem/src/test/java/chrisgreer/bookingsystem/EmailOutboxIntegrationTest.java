@@ -0,0 +1,231 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.entities.EmailOutbox;
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.repositories.EmailOutboxRepository;
+import chrisgreer.bookingsystem.services.EmailOutboxDispatcher;
+import chrisgreer.bookingsystem.services.EmailService;
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static chrisgreer.bookingsystem.model.BookingStatus.PENDING;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(properties = {
+        "spring.mail.host=localhost",
+        "spring.mail.port=3025",
+        "spring.mail.properties.mail.smtp.auth=false",
+        "spring.mail.properties.mail.smtp.starttls.enable=false"
+})
+@ActiveProfiles("test")
+public class EmailOutboxIntegrationTest {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP)
+            .withConfiguration(GreenMailConfiguration.aConfig().withDisabledAuthentication());
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private EmailOutboxDispatcher dispatcher;
+
+    @Autowired
+    private EmailOutboxRepository outboxRepository;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private HikariDataSource primaryDataSource;
+
+    @MockitoSpyBean
+    private JavaMailSender mailSender;
+
+    @BeforeEach
+    void clearOutbox() {
+        outboxRepository.deleteAll();
+    }
+
+    //Leaves nothing queued for the dispatchers of other test contexts to try sending
+    @AfterEach
+    void clearBookings() {
+        outboxRepository.deleteAll();
+        bookingRepository.deleteAll();
+    }
+
+    @Test
+    void notifyBookingRequested_isOnlyQueued_untilDispatched() {
+        Booking booking = requestedBooking();
+
+        new TransactionTemplate(transactionManager)
+                .executeWithoutResult(s -> emailService.notifyBookingRequested(booking));
+
+        assertEquals(0, greenMail.getReceivedMessages().length);
+        assertEquals(2, outboxRepository.count());
+
+        dispatcher.dispatchPending();
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertEquals(2, received.length);
+        assertTrue(outboxRepository.findAll().stream().allMatch(e -> e.getSentAt() != null));
+    }
+
+    @Test
+    void rolledBackTransaction_sendsNothing() {
+        Booking booking = requestedBooking();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(s -> {
+            emailService.sendBookingUpdated(booking);
+            s.setRollbackOnly();
+        });
+
+        dispatcher.dispatchPending();
+
+        assertEquals(0, outboxRepository.count());
+        assertEquals(0, greenMail.getReceivedMessages().length);
+    }
+
+    @Test
+    void failedSend_isRetriedLater() {
+        Booking booking = requestedBooking();
+        new TransactionTemplate(transactionManager)
+                .executeWithoutResult(s -> emailService.sendBookingUpdated(booking));
+
+        greenMail.stop();
+        dispatcher.dispatchPending();
+        greenMail.start();
+
+        var queued = outboxRepository.findAll();
+        assertEquals(1, queued.size());
+        assertEquals(1, queued.get(0).getAttempts());
+        assertTrue(queued.get(0).getNextAttemptAt().isAfter(queued.get(0).getCreatedAt()));
+
+        //Backoff not yet elapsed, so nothing is picked up
+        dispatcher.dispatchPending();
+        assertEquals(0, greenMail.getReceivedMessages().length);
+    }
+
+    @Test
+    void consecutiveBatches_reuseOneSmtpConnection() {
+        queueUpdates(3);
+        dispatcher.dispatchPending();
+        assertEquals(3, greenMail.getReceivedMessages().length);
+
+        double opened = sessions("new");
+        double reused = sessions("reused");
+        queueUpdates(2);
+        dispatcher.dispatchPending();
+
+        assertEquals(5, greenMail.getReceivedMessages().length);
+        assertEquals(opened, sessions("new"));
+        assertEquals(reused + 1, sessions("reused"));
+        assertTrue(outboxRepository.findAll().stream().allMatch(e -> e.getSentAt() != null));
+    }
+
+    @Test
+    void connectionDroppedWhileIdle_isReplaced_withoutFailingTheMessage() {
+        queueUpdates(1);
+        dispatcher.dispatchPending();
+
+        //Restarting the server drops the pooled connection
+        greenMail.stop();
+        greenMail.start();
+        queueUpdates(1);
+        dispatcher.dispatchPending();
+
+        assertEquals(1, greenMail.getReceivedMessages().length);
+        assertTrue(outboxRepository.findAll().stream().allMatch(e -> e.getSentAt() != null && e.getAttempts() == 0));
+    }
+
+    @Test
+    void smtpSend_holdsNoTransactionOrConnection() {
+        queueUpdates(2);
+        doAnswer(invocation -> {
+            assertFalse(TransactionSynchronizationManager.isActualTransactionActive());
+            assertEquals(0, primaryDataSource.getHikariPoolMXBean().getActiveConnections());
+            return invocation.callRealMethod();
+        }).when(mailSender).send(any(MimeMessage[].class));
+
+        dispatcher.dispatchPending();
+
+        verify(mailSender).send(any(MimeMessage[].class));
+        assertEquals(2, greenMail.getReceivedMessages().length);
+        assertTrue(outboxRepository.findAll().stream().allMatch(e -> e.getSentAt() != null));
+    }
+
+    @Test
+    void purgeFinished_deletesOldSentAndGivenUpRows_only() {
+        var old = OffsetDateTime.now().minusDays(30);
+        var sent = outbox(old, 1, old);
+        var givenUp = outbox(old, 8, null);
+        var stillRetrying = outbox(old, 3, null);
+        var recentlySent = outbox(OffsetDateTime.now(), 1, OffsetDateTime.now());
+
+        dispatcher.purgeFinished();
+
+        var left = outboxRepository.findAll().stream().map(EmailOutbox::getId).toList();
+        assertFalse(left.contains(sent.getId()));
+        assertFalse(left.contains(givenUp.getId()));
+        assertTrue(left.containsAll(List.of(stillRetrying.getId(), recentlySent.getId())));
+    }
+
+    private EmailOutbox outbox(OffsetDateTime createdAt, int attempts, OffsetDateTime sentAt) {
+        var email = new EmailOutbox("bob@example.com", "Subject", "Body");
+        email.setCreatedAt(createdAt);
+        email.setAttempts(attempts);
+        email.setSentAt(sentAt);
+        //Not due, so no dispatcher picks it up
+        email.setNextAttemptAt(OffsetDateTime.now().plusDays(1));
+        return outboxRepository.save(email);
+    }
+
+    private void queueUpdates(int count) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(s -> {
+            for (int i = 0; i < count; i++) emailService.sendBookingUpdated(requestedBooking());
+        });
+    }
+
+    private double sessions(String connection) {
+        return meterRegistry.get("booking.email.smtp.sessions").tag("connection", connection).functionCounter().count();
+    }
+
+    private Booking requestedBooking() {
+        Booking booking = TestUtil.persistAvailableBooking(bookingRepository);
+        booking.setStatus(PENDING);
+        return booking;
+    }
+}
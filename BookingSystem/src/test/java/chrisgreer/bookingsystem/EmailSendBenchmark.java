@@ -0,0 +1,187 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.config.PooledJavaMailSender;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/// What EmailOutboxDispatcher pays to hand a batch to SMTP, against GreenMail over implicit TLS with
+/// AUTH (it has no STARTTLS, the handshake costs the same kind of round trips). A relay in front of it
+/// holds back every reply by -Demail.rtt milliseconds, standing in for the network to Gmail.
+///  - per message: JavaMailSenderImpl.send(SimpleMailMessage) for each one, what the dispatcher did
+///  - per batch: JavaMailSenderImpl.send(MimeMessage...), one connection per batch
+///  - pooled: PooledJavaMailSender.send(MimeMessage...), one connection kept across batches
+///
+/// Batches of 2 (a booking request: the admin and the requester) and 20 (email.outbox.batch-size).
+/// Connections counts what the relay accepted, warm-up excluded.
+///
+/// Run with: mvn -Pbenchmark test -Dtest=EmailSendBenchmark
+/// Tune with -Demail.rtt=20 -Demail.messages=200
+@Tag("benchmark")
+public class EmailSendBenchmark {
+
+    private static final int RTT_MILLIS = Integer.getInteger("email.rtt", 20);
+    private static final int MESSAGES = Integer.getInteger("email.messages", 200);
+    private static final int WARMUP_BATCHES = 3;
+    private static final String USER = "bench@example.com";
+
+    record Variant(String name, Supplier<JavaMailSenderImpl> sender, boolean perMessage) { }
+
+    @Test
+    void sendBatches() throws Exception {
+        var greenMail = new GreenMail(ServerSetupTest.SMTPS);
+        greenMail.setUser(USER, USER, "bench");
+        greenMail.start();
+        try (var relay = new Relay(ServerSetupTest.SMTPS.getPort(), RTT_MILLIS)) {
+            var variants = List.of(
+                    new Variant("per message", JavaMailSenderImpl::new, true),
+                    new Variant("per batch", JavaMailSenderImpl::new, false),
+                    new Variant("pooled", () -> new PooledJavaMailSender(2, Duration.ofSeconds(60), Duration.ofSeconds(10)), false)
+            );
+
+            System.out.printf("%n%d message(s) per run, %d ms round trip%n", MESSAGES, RTT_MILLIS);
+            System.out.printf("%-12s %6s %12s %12s %12s%n", "", "batch", "ms/message", "msg/s", "connections");
+            for (int batchSize : new int[] {2, 20}) {
+                for (var variant : variants) {
+                    var sender = configure(variant.sender().get(), relay.port());
+                    for (int i = 0; i < WARMUP_BATCHES; i++) send(sender, batchSize, variant.perMessage());
+
+                    int connections = relay.accepted();
+                    int batches = MESSAGES / batchSize;
+                    long start = System.nanoTime();
+                    for (int i = 0; i < batches; i++) send(sender, batchSize, variant.perMessage());
+                    double millis = (System.nanoTime() - start) / 1e6;
+
+                    int sent = batches * batchSize;
+                    System.out.printf("%-12s %6d %12.2f %12.1f %12d%n", variant.name(), batchSize, millis / sent,
+                            sent * 1000 / millis, relay.accepted() - connections);
+                    if (sender instanceof PooledJavaMailSender pooled) pooled.shutdown();
+                }
+            }
+        } finally {
+            greenMail.stop();
+        }
+    }
+
+    private static JavaMailSenderImpl configure(JavaMailSenderImpl sender, int port) {
+        sender.setHost("localhost");
+        sender.setPort(port);
+        sender.setUsername(USER);
+        sender.setPassword("bench");
+        sender.setDefaultEncoding("UTF-8");
+        var properties = new Properties();
+        properties.put("mail.smtp.auth", "true");
+        properties.put("mail.smtp.ssl.enable", "true");
+        //GreenMail's self-signed certificate
+        properties.put("mail.smtp.ssl.trust", "*");
+        properties.put("mail.smtp.ssl.checkserveridentity", "false");
+        properties.put("mail.smtp.connectiontimeout", "10000");
+        properties.put("mail.smtp.timeout", "10000");
+        sender.setJavaMailProperties(properties);
+        return sender;
+    }
+
+    private static void send(JavaMailSenderImpl sender, int batchSize, boolean perMessage) throws MessagingException {
+        if (perMessage) {
+            for (int i = 0; i < batchSize; i++) {
+                var message = new SimpleMailMessage();
+                message.setTo(USER);
+                message.setSubject("Booking updated");
+                message.setText(body(i));
+                sender.send(message);
+            }
+            return;
+        }
+        var messages = new MimeMessage[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            messages[i] = sender.createMimeMessage();
+            var helper = new MimeMessageHelper(messages[i]);
+            helper.setTo(USER);
+            helper.setSubject("Booking updated");
+            helper.setText(body(i));
+        }
+        sender.send(messages);
+    }
+
+    private static String body(int i) {
+        return "Booking Details:\n\nName: Bench " + i + "\nEmail: " + USER + "\nStatus: CONFIRMED\n";
+    }
+
+    /// Forwards to GreenMail, holding each chunk it sends back for the round trip. SMTP waits for
+    /// every reply (no pipelining here), so that's one round trip per command
+    static class Relay implements AutoCloseable {
+
+        private final ServerSocket server;
+        private final AtomicInteger accepted = new AtomicInteger();
+
+        Relay(int targetPort, int rttMillis) throws IOException {
+            server = new ServerSocket(0);
+            Thread.ofPlatform().daemon().name("smtp-relay").start(() -> {
+                while (!server.isClosed()) {
+                    try {
+                        Socket client = server.accept();
+                        Socket target = new Socket("localhost", targetPort);
+                        accepted.incrementAndGet();
+                        copy(client, target, 0);
+                        copy(target, client, rttMillis);
+                    } catch (IOException closed) {
+                        return;
+                    }
+                }
+            });
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        int accepted() {
+            return accepted.get();
+        }
+
+        private static void copy(Socket from, Socket to, int delayMillis) {
+            Thread.ofPlatform().daemon().name("smtp-relay-copy").start(() -> {
+                try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        if (delayMillis > 0) Thread.sleep(delayMillis);
+                        out.write(buffer, 0, read);
+                        out.flush();
+                    }
+                } catch (IOException | InterruptedException done) {
+                    //Either side closed
+                } finally {
+                    try {
+                        from.close();
+                        to.close();
+                    } catch (IOException ignored) {
+                        //Already closed
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+}
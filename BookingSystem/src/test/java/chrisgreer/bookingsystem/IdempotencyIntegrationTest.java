@@ -0,0 +1,226 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.repositories.IdempotencyKeyRepository;
+import chrisgreer.bookingsystem.services.EmailService;
+import chrisgreer.bookingsystem.services.IdempotencyService;
+import chrisgreer.bookingsystem.services.IdempotencyTestHooks;
+import chrisgreer.bookingsystem.web.IdempotencyFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//Security filters on, the idempotency filter runs inside that chain
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class IdempotencyIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockitoSpyBean
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    @Value("${admin.username}")
+    private String adminUsername;
+
+    @Value("${admin.password}")
+    private String adminPassword;
+
+    @AfterEach
+    void cleanUp() {
+        bookingRepository.deleteAll();
+        idempotencyKeyRepository.deleteAll();
+        IdempotencyTestHooks.forgetCachedResponses(idempotencyService);
+    }
+
+    @Test
+    void retriedRequest_replaysFirstResponse_withoutRepositoryOrEmail() throws Exception {
+        Booking booking = TestUtil.persistAvailableBooking(bookingRepository);
+        String key = UUID.randomUUID().toString();
+        String body = objectMapper.writeValueAsString(TestUtil.createValidBookingRequest());
+
+        mockMvc.perform(patch("/booking/request/{id}", booking.getId())
+                        .header(IdempotencyFilter.KEY_HEADER, key)
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isNoContent())
+                .andExpect(header().doesNotExist(IdempotencyFilter.REPLAYED_HEADER));
+        clearInvocations(bookingRepository);
+
+        mockMvc.perform(patch("/booking/request/{id}", booking.getId())
+                        .header(IdempotencyFilter.KEY_HEADER, key)
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isNoContent())
+                .andExpect(header().string(IdempotencyFilter.REPLAYED_HEADER, "true"));
+
+        verifyNoInteractions(bookingRepository);
+        verify(emailService, times(1)).notifyBookingRequested(any());
+
+        //Without the key the retry is a fresh attempt, and loses to the first
+        mockMvc.perform(patch("/booking/request/{id}", booking.getId())
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void replay_comesFromTheTable_onceThisNodeForgetsIt() throws Exception {
+        String key = UUID.randomUUID().toString();
+        String slot = objectMapper.writeValueAsString(TestUtil.createValidBookingSlot());
+
+        var first = mockMvc.perform(post("/booking/admin")
+                        .with(httpBasic(adminUsername, adminPassword))
+                        .header(IdempotencyFilter.KEY_HEADER, key)
+                        .contentType(MediaType.APPLICATION_JSON).content(slot))
+                .andReturn().getResponse();
+
+        //As if the retry landed on another node
+        IdempotencyTestHooks.forgetCachedResponses(idempotencyService);
+
+        var retry = mockMvc.perform(post("/booking/admin")
+                        .with(httpBasic(adminUsername, adminPassword))
+                        .header(IdempotencyFilter.KEY_HEADER, key)
+                        .contentType(MediaType.APPLICATION_JSON).content(slot))
+                .andExpect(header().string(IdempotencyFilter.REPLAYED_HEADER, "true"))
+                .andReturn().getResponse();
+
+        assertEquals(first.getStatus(), retry.getStatus());
+        assertEquals(first.getContentAsString(), retry.getContentAsString());
+        assertEquals(1, bookingRepository.count());
+    }
+
+    @Test
+    void sameKey_forADifferentRequest_isRejected() throws Exception {
+        Booking first = TestUtil.persistAvailableBooking(bookingRepository);
+        Booking second = TestUtil.persistAvailableBooking(bookingRepository);
+        String key = UUID.randomUUID().toString();
+
+        mockMvc.perform(delete("/booking/admin/{id}", first.getId())
+                        .with(httpBasic(adminUsername, adminPassword))
+                        .header(IdempotencyFilter.KEY_HEADER, key))
+                .andExpect(status().isNoContent());
+
+        mockMvc.perform(delete("/booking/admin/{id}", second.getId())
+                        .with(httpBasic(adminUsername, adminPassword))
+                        .header(IdempotencyFilter.KEY_HEADER, key))
+                .andExpect(status().isUnprocessableEntity());
+        assertEquals(false, bookingRepository.findById(second.getId()).orElseThrow().isDeleted());
+    }
+
+    @Test
+    void sameKey_withADifferentBody_isRejected() throws Exception {
+        Booking booking = TestUtil.persistAvailableBooking(bookingRepository);
+        String key = UUID.randomUUID().toString();
+        var request = TestUtil.createValidBookingRequest();
+
+        //Its own address, booking requests are rate limited per client
+        mockMvc.perform(patch("/booking/request/{id}", booking.getId())
+                        .with(from("203.0.113.3"))
+                        .header(IdempotencyFilter.KEY_HEADER, key)
+                        .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isNoContent());
+
+        request.setName("Someone Else");
+        mockMvc.perform(patch("/booking/request/{id}", booking.getId())
+                        .with(from("203.0.113.3"))
+                        .header(IdempotencyFilter.KEY_HEADER, key)
+                        .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(header().doesNotExist(IdempotencyFilter.REPLAYED_HEADER));
+        assertEquals("Valid Name", bookingRepository.findById(booking.getId()).orElseThrow().getName());
+    }
+
+    @Test
+    void sameKey_fromAnotherCaller_isTheirOwn() throws Exception {
+        Booking first = TestUtil.persistAvailableBooking(bookingRepository);
+        Booking second = TestUtil.persistAvailableBooking(bookingRepository);
+        String key = "order-1";
+        String body = objectMapper.writeValueAsString(TestUtil.createValidBookingRequest());
+
+        mockMvc.perform(patch("/booking/request/{id}", first.getId())
+                        .with(from("203.0.113.1"))
+                        .header(IdempotencyFilter.KEY_HEADER, key)
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isNoContent());
+
+        //Not a replay of the first client's response, and not a 422 for reusing "their" key either
+        mockMvc.perform(patch("/booking/request/{id}", second.getId())
+                        .with(from("203.0.113.2"))
+                        .header(IdempotencyFilter.KEY_HEADER, key)
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isNoContent())
+                .andExpect(header().doesNotExist(IdempotencyFilter.REPLAYED_HEADER));
+        verify(emailService, times(2)).notifyBookingRequested(any());
+    }
+
+    @Test
+    void replay_stillNeedsTheLogin() throws Exception {
+        Booking booking = TestUtil.persistAvailableBooking(bookingRepository);
+        String key = UUID.randomUUID().toString();
+
+        mockMvc.perform(delete("/booking/admin/{id}", booking.getId())
+                        .with(httpBasic(adminUsername, adminPassword))
+                        .header(IdempotencyFilter.KEY_HEADER, key))
+                .andExpect(status().isNoContent());
+
+        mockMvc.perform(delete("/booking/admin/{id}", booking.getId())
+                        .header(IdempotencyFilter.KEY_HEADER, key))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void overlongKey_isBadRequest() throws Exception {
+        Booking booking = TestUtil.persistAvailableBooking(bookingRepository);
+
+        mockMvc.perform(patch("/booking/request/{id}", booking.getId())
+                        .header(IdempotencyFilter.KEY_HEADER, "k".repeat(101))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(TestUtil.createValidBookingRequest())))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static RequestPostProcessor from(String address) {
+        return request -> {
+            request.setRemoteAddr(address);
+            return request;
+        };
+    }
+}
@@ -0,0 +1,312 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.model.BookingStatus;
+import chrisgreer.bookingsystem.services.RecurringSlotService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/// End to end load test against the real controllers, service and database.
+///
+/// Boots the app on an embedded Postgres (no test profile, nothing to set up) with a stubbed
+/// JavaMailSender, seeds slots from a recurring rule, then drives a weighted mix of traffic:
+///  - 80% GET /booking/public
+///  - 10% PATCH /booking/request/{id} (random slot, so conflicts are part of the mix)
+///  - 5% GET /booking/admin
+///  - 5% PATCH /booking/admin/{id} (confirm or release, which keeps slots claimable)
+///
+/// Open loop: requests go out on a fixed schedule whether or not earlier ones have returned,
+/// and latency is measured from when a request was due rather than when it was sent. A stall
+/// shows up in every request queued behind it, so the histograms are corrected for
+/// coordinated omission.
+///
+/// Run with: mvn -Pbenchmark test -Dtest=LoadTestBenchmark
+/// Tune with -Dloadtest.rate=200 -Dloadtest.seconds=30 -Dloadtest.warmupSeconds=10
+///   -Dloadtest.weeks=8 -Dloadtest.virtual=false -Dloadtest.seed=42
+///   -Dloadtest.adminAuth=bearer (or basic, to pay BCrypt on every admin request)
+/// Full percentile distributions are written to target/loadtest/*.hgrm (plot with HdrHistogram's plotter).
+/// For Fly sizing run it under taskset or docker --cpus matching the machine, and raise the rate until p99 breaks.
+@Tag("benchmark")
+public class LoadTestBenchmark {
+
+    private static final int RATE = Integer.getInteger("loadtest.rate", 200);
+    private static final int SECONDS = Integer.getInteger("loadtest.seconds", 30);
+    private static final int WARMUP_SECONDS = Integer.getInteger("loadtest.warmupSeconds", 10);
+    private static final int WEEKS = Integer.getInteger("loadtest.weeks", 8);
+    private static final boolean VIRTUAL = Boolean.getBoolean("loadtest.virtual");
+    private static final long SEED = Long.getLong("loadtest.seed", 42L);
+    private static final boolean BASIC_AUTH = "basic".equals(System.getProperty("loadtest.adminAuth", "bearer"));
+
+    private static final String USERNAME = "loadtest";
+    private static final String PASSWORD = "loadtest";
+
+    //Anything slower than a minute is off the scale anyway
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    enum Endpoint {
+        PUBLIC_LIST(80, 200, 304),
+        REQUEST_BOOKING(10, 204, 409),
+        ADMIN_LIST(5, 200),
+        ADMIN_UPDATE(5, 204);
+
+        final int weight;
+        final Set<Integer> expected;
+
+        Endpoint(int weight, Integer... expected) {
+            this.weight = weight;
+            this.expected = Set.of(expected);
+        }
+    }
+
+    /// Everything recorded for one endpoint in one phase
+    static class Stats {
+        final Histogram latencyMicros = new ConcurrentHistogram(HIGHEST_MICROS, 3);
+        final LongAdder requests = new LongAdder();
+        final LongAdder unexpected = new LongAdder();
+        final Map<Integer, LongAdder> statuses = Collections.synchronizedMap(new TreeMap<>());
+
+        void record(long micros, int status, boolean expected) {
+            latencyMicros.recordValue(Math.min(micros, HIGHEST_MICROS));
+            requests.increment();
+            if (!expected) unexpected.increment();
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+        }
+    }
+
+    @Test
+    void mixedTraffic() throws Exception {
+        try (var postgres = EmbeddedPostgres.builder().start();
+             var context = start(postgres)) {
+
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            List<Long> slotIds = seed(context);
+            var target = new Target(port, slotIds, new Random(SEED));
+            target.authorization = BASIC_AUTH ? basicAuthorization() : target.bearerAuthorization();
+
+            System.out.printf("%nSeeded %d slots, %d req/s for %ds (after %ds warm up), %s threads, %s admin auth, %d CPU(s)%n",
+                    slotIds.size(), RATE, SECONDS, WARMUP_SECONDS, VIRTUAL ? "virtual" : "platform",
+                    BASIC_AUTH ? "basic" : "bearer", Runtime.getRuntime().availableProcessors());
+
+            run(target, Duration.ofSeconds(WARMUP_SECONDS));
+            long start = System.nanoTime();
+            var results = run(target, Duration.ofSeconds(SECONDS));
+            report(results, (System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    private ConfigurableApplicationContext start(EmbeddedPostgres postgres) {
+        //As arguments rather than default properties, so they win over application.properties
+        return new SpringApplicationBuilder(BookingSystemApplication.class, LoadTestConfig.class)
+                .run(
+                        "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                        "--spring.datasource.username=postgres",
+                        "--spring.datasource.password=",
+                        "--admin.username=" + USERNAME,
+                        "--admin.password=" + PASSWORD,
+                        "--admin.token.secret=load-test-secret-of-at-least-32-bytes",
+                        "--spring.mail.username=loadtest@example.com",
+                        "--spring.mail.password=unused",
+                        "--server.port=0",
+                        "--spring.jpa.show-sql=false",
+                        //Every request comes from localhost, the limiter would turn most of them away
+                        "--booking.rate-limit.enabled=false",
+                        "--spring.threads.virtual.enabled=" + VIRTUAL
+                );
+    }
+
+    /// Weekday slots through the real recurring rule, then the ids to aim requests at
+    private List<Long> seed(ConfigurableApplicationContext context) {
+        var rule = TestUtil.createWeekdayRecurringSlots();
+        rule.setStartDate(LocalDate.now().plusDays(1));
+        rule.setWeeks(WEEKS);
+        context.getBean(RecurringSlotService.class).generate(rule);
+
+        return context.getBean(JdbcTemplate.class)
+                .queryForList("SELECT id FROM booking ORDER BY id", Long.class);
+    }
+
+    /// Sends requests on a fixed schedule for the duration, then waits for stragglers
+    private Map<Endpoint, Stats> run(Target target, Duration duration) throws InterruptedException {
+        Map<Endpoint, Stats> results = new EnumMap<>(Endpoint.class);
+        for (Endpoint e : Endpoint.values()) results.put(e, new Stats());
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / RATE;
+        long total = duration.getSeconds() * RATE;
+
+        try (var senders = Executors.newVirtualThreadPerTaskExecutor()) {
+            long start = System.nanoTime();
+            for (long i = 0; i < total; i++) {
+                long due = start + i * interval;
+                long wait = due - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+
+                //Chosen on the scheduling thread so the sequence is the same for a given seed
+                var endpoint = target.pick();
+                var request = target.request(endpoint);
+                senders.submit(() -> {
+                    int status;
+                    try {
+                        status = target.http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    } catch (Exception e) {
+                        status = -1;
+                    }
+                    long micros = (System.nanoTime() - due) / 1000;
+                    results.get(endpoint).record(micros, status, endpoint.expected.contains(status));
+                });
+            }
+            senders.shutdown();
+            senders.awaitTermination(2, TimeUnit.MINUTES);
+        }
+        return results;
+    }
+
+    private void report(Map<Endpoint, Stats> results, double seconds) throws Exception {
+        var out = Path.of("target", "loadtest");
+        Files.createDirectories(out);
+
+        System.out.printf("%-16s %8s %8s %10s %9s %9s %9s %9s %9s  %s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "statuses");
+        var all = new Histogram(HIGHEST_MICROS, 3);
+        long requests = 0;
+        long errors = 0;
+        for (var entry : results.entrySet()) {
+            var stats = entry.getValue();
+            var h = stats.latencyMicros;
+            all.add(h);
+            requests += stats.requests.sum();
+            errors += stats.unexpected.sum();
+            printRow(entry.getKey().name(), stats.requests.sum(), stats.unexpected.sum(), seconds, h, stats.statuses.toString());
+
+            try (var file = new PrintStream(out.resolve(entry.getKey().name().toLowerCase() + ".hgrm").toFile(),
+                    StandardCharsets.UTF_8)) {
+                h.outputPercentileDistribution(file, 1000.0);
+            }
+        }
+        printRow("ALL", requests, errors, seconds, all, "");
+    }
+
+    private static void printRow(String name, long requests, long errors, double seconds, Histogram h, String statuses) {
+        System.out.printf("%-16s %8d %8d %10.1f %9.1f %9.1f %9.1f %9.1f %9.1f  %s%n",
+                name, requests, errors, requests / seconds,
+                h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+                h.getMaxValue() / 1000.0, statuses);
+    }
+
+    /// Builds the next request in the mix
+    static class Target {
+
+        final HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        private final String base;
+        private final List<Long> slotIds;
+        private final Random random;
+        private String authorization;
+        private final int totalWeight = Arrays.stream(Endpoint.values()).mapToInt(e -> e.weight).sum();
+
+        Target(int port, List<Long> slotIds, Random random) {
+            this.base = "http://localhost:" + port;
+            this.slotIds = slotIds;
+            this.random = random;
+        }
+
+        /// One BCrypt check up front, like the dashboard logging in
+        String bearerAuthorization() throws Exception {
+            var login = HttpRequest.newBuilder(URI.create(base + "/auth/token"))
+                    .header("Authorization", basicAuthorization())
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+            String body = http.send(login, HttpResponse.BodyHandlers.ofString()).body();
+            return "Bearer " + new ObjectMapper().readTree(body).get("token").asText();
+        }
+
+        Endpoint pick() {
+            int roll = random.nextInt(totalWeight);
+            for (Endpoint e : Endpoint.values()) {
+                roll -= e.weight;
+                if (roll < 0) return e;
+            }
+            throw new IllegalStateException();
+        }
+
+        HttpRequest request(Endpoint endpoint) {
+            return switch (endpoint) {
+                case PUBLIC_LIST -> get("/public").build();
+                case ADMIN_LIST -> get("/admin").header("Authorization", authorization).build();
+                case REQUEST_BOOKING -> patch("/request/" + randomSlot(), """
+                        {"name":"Load Test","email":"load@example.com","phone":"01234567890","topic":"Sizing"}
+                        """).build();
+                case ADMIN_UPDATE -> {
+                    var status = random.nextBoolean() ? BookingStatus.CONFIRMED : BookingStatus.AVAILABLE;
+                    yield patch("/admin/" + randomSlot(), "{\"status\":\"" + status + "\"}")
+                            .header("Authorization", authorization).build();
+                }
+            };
+        }
+
+        private long randomSlot() {
+            return slotIds.get(random.nextInt(slotIds.size()));
+        }
+
+        private HttpRequest.Builder get(String path) {
+            return HttpRequest.newBuilder(URI.create(base + "/booking" + path)).timeout(Duration.ofSeconds(30)).GET();
+        }
+
+        private HttpRequest.Builder patch(String path, String json) {
+            return HttpRequest.newBuilder(URI.create(base + "/booking" + path))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .method("PATCH", HttpRequest.BodyPublishers.ofString(json));
+        }
+    }
+
+    private static String basicAuthorization() {
+        return "Basic " + Base64.getEncoder()
+                .encodeToString((USERNAME + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TestConfiguration
+    static class LoadTestConfig {
+
+        //Outbox still runs, the sends just go nowhere
+        @Bean
+        @Primary
+        JavaMailSender loadTestMailSender() {
+            JavaMailSender mailSender = Mockito.mock(JavaMailSender.class);
+            Mockito.when(mailSender.createMimeMessage()).thenAnswer(i -> new MimeMessage((Session) null));
+            return mailSender;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.services.EmailService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//Boot's tests use a plain in-memory registry unless observability is asked for
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+@ActiveProfiles("test")
+public class MetricsIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    @Value("${admin.username}")
+    private String adminUsername;
+
+    @Value("${admin.password}")
+    private String adminPassword;
+
+    private Booking slot;
+
+    private static final String REQUEST_BOOKING_JSON = """
+        {
+          "name": "Chris",
+          "email": "chris@example.com",
+          "phone": "07977904132"
+        }
+        """;
+
+    @AfterEach
+    void cleanUp() {
+        if (slot != null) bookingRepository.deleteById(slot.getId());
+    }
+
+    @Test
+    void health_requiresNoAuth() throws Exception {
+        mockMvc.perform(get("/actuator/health"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void prometheus_requiresAuth() throws Exception {
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void prometheus_exposesBookingTimersAndCounters() throws Exception {
+        slot = TestUtil.persistAvailableBooking(bookingRepository);
+
+        //Second claim on the same slot is the conflict
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(patch("/booking/request/" + slot.getId())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(REQUEST_BOOKING_JSON));
+        }
+        mockMvc.perform(get("/booking/public")).andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/prometheus").with(httpBasic(adminUsername, adminPassword)))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("booking_conflicts_total{operation=\"request\"}")))
+                .andExpect(content().string(containsString("result=\"CONFLICT\"")))
+                .andExpect(content().string(containsString("result=\"SUCCESS\"")))
+                .andExpect(content().string(containsString("http_server_requests_seconds_bucket")))
+                .andExpect(content().string(containsString("repository=\"BookingRepository\"")))
+                .andExpect(content().string(containsString("hikaricp_connections_active")))
+                .andExpect(content().string(containsString("hikaricp_connections_pending")))
+                .andExpect(content().string(containsString("hikaricp_connections_acquire_seconds_bucket")))
+                .andExpect(content().string(containsString("booking_email_send_seconds")))
+                .andExpect(content().string(containsString("booking_public_cache_requests_total{result=\"miss\"}")));
+    }
+}
@@ -0,0 +1,149 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.model.BookingStatus;
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.services.EmailService;
+import chrisgreer.bookingsystem.utils.TokenBuckets;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//Two booking requests per client, then one a minute
+@SpringBootTest(properties = {
+        "booking.rate-limit.request.burst=2",
+        "booking.rate-limit.request.per-minute=1"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class RateLimitIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    @AfterEach
+    void cleanUp() {
+        bookingRepository.deleteAll();
+    }
+
+    @Test
+    void clientOverItsLimit_getsTooManyRequests_andOthersDont() throws Exception {
+        double rejectedBefore = rejected("request");
+        requestBooking("10.0.0.1").andExpect(status().isNoContent());
+        requestBooking("10.0.0.1").andExpect(status().isNoContent());
+
+        Booking untouched = TestUtil.persistAvailableBooking(bookingRepository);
+        mockMvc.perform(patch("/booking/request/{id}", untouched.getId())
+                        .with(from("10.0.0.1"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(TestUtil.createValidBookingRequest())))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "60"))
+                .andExpect(jsonPath("$.error").exists());
+
+        assertEquals(BookingStatus.AVAILABLE, bookingRepository.findById(untouched.getId()).orElseThrow().getStatus());
+        assertEquals(rejectedBefore + 1, rejected("request"));
+
+        //Someone else, and the same client on another route, have their own buckets
+        requestBooking("10.0.0.2").andExpect(status().isNoContent());
+        mockMvc.perform(get("/booking/public").with(from("10.0.0.1")))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void tokenBuckets_stayBounded_andForgetIdleClients() {
+        var minute = Duration.ofMinutes(1).toNanos();
+        var buckets = new TokenBuckets(3, 60, Duration.ofMinutes(1), 64);
+
+        for (int i = 0; i < 10_000; i++) buckets.tryAcquire("client-" + i, 0);
+        assertTrue(buckets.size() <= 64, "held " + buckets.size() + " buckets");
+
+        //The newcomers past the cap share a bucket per stripe, so they're limited too
+        long turnedAway = 0;
+        for (int i = 10_000; i < 20_000; i++) {
+            if (buckets.tryAcquire("client-" + i, 0) > 0) turnedAway++;
+        }
+        assertTrue(turnedAway > 9_000, "only " + turnedAway + " limited");
+
+        //Three takes then a second per token
+        assertEquals(0, buckets.tryAcquire("client-0", 0));
+        assertEquals(0, buckets.tryAcquire("client-0", 0));
+        assertEquals(Duration.ofSeconds(1).toNanos(), buckets.tryAcquire("client-0", 0));
+
+        assertEquals(0, buckets.evictIdle(0));
+        assertEquals(64, buckets.evictIdle(minute));
+        assertEquals(0, buckets.size());
+    }
+
+    @Test
+    void tokenBuckets_keepCounting_whenNanoTimeWraps() {
+        var second = Duration.ofSeconds(1).toNanos();
+        var buckets = new TokenBuckets(3, 60, Duration.ofMinutes(1), 64);
+        long start = Long.MAX_VALUE - second / 2;
+
+        for (int i = 0; i < 3; i++) assertEquals(0, buckets.tryAcquire("client", start));
+        assertEquals(second, buckets.tryAcquire("client", start));
+        //Full again three seconds after start, which is past the wrap
+        assertEquals(0, buckets.evictIdle(start));
+
+        long later = start + second;
+        assertEquals(0, buckets.tryAcquire("client", later));
+        assertEquals(second, buckets.tryAcquire("client", later));
+        assertEquals(0, buckets.evictIdle(later));
+        assertEquals(1, buckets.evictIdle(start + 5 * second));
+    }
+
+    private ResultActions requestBooking(String client) throws Exception {
+        Booking booking = TestUtil.persistAvailableBooking(bookingRepository);
+        return mockMvc.perform(patch("/booking/request/{id}", booking.getId())
+                .with(from(client))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(TestUtil.createValidBookingRequest())));
+    }
+
+    private double rejected(String route) {
+        return meterRegistry.get("booking.ratelimit.requests")
+                .tags("route", route, "result", "rejected")
+                .functionCounter().count();
+    }
+
+    private static RequestPostProcessor from(String address) {
+        return request -> {
+            request.setRemoteAddr(address);
+            return request;
+        };
+    }
+}
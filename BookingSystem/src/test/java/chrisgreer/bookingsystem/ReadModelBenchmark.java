@@ -0,0 +1,173 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.mappers.BookingMapper;
+import chrisgreer.bookingsystem.model.BookingStatus;
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.services.BookingService;
+import chrisgreer.bookingsystem.services.EmailService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.data.repository.Repository;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/// Entity hydration + BookingMapper vs the repository's DTO projections, for the public list and an admin page.
+///
+/// Per request it reports the JSON size, bytes allocated on the request thread and how many entities
+/// were left managed in the persistence context (open-in-view keeps them until the response is written).
+/// The entity side runs in a read-only transaction, as Spring Data's own query methods do.
+///
+/// Run with: mvn -Pbenchmark test -Dtest=ReadModelBenchmark
+/// Tune with -Dbench.slots=2000 -Dbench.iterations=300
+@Tag("benchmark")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+public class ReadModelBenchmark {
+
+    private static final int SLOTS = Integer.getInteger("bench.slots", 2000);
+    private static final int ITERATIONS = Integer.getInteger("bench.iterations", 300);
+    private static final int PAGE_SIZE = BookingService.MAX_PAGE_SIZE;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private BookingMapper bookingMapper;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    private final List<Long> seeded = new ArrayList<>();
+
+    interface EntityWindows extends Repository<Booking, Long> {
+        Window<Booking> findByDeleted(boolean deleted, ScrollPosition position, Sort sort, Limit limit);
+    }
+
+    record Result(String name, int jsonBytes, long allocatedBytes, int managedEntities, double micros) { }
+
+    @AfterEach
+    void cleanUp() {
+        bookingRepository.deleteAllByIdInBatch(seeded);
+    }
+
+    @Test
+    void compareEntityAndProjectionReads() throws Exception {
+        seed();
+        var now = OffsetDateTime.now();
+
+        List<Result> results = new ArrayList<>();
+        results.add(measure("public, entities", () -> entityManager.createQuery("""
+                SELECT b FROM Booking b
+                WHERE b.status = chrisgreer.bookingsystem.model.BookingStatus.AVAILABLE AND b.deleted = false
+                  AND b.startTime > :from ORDER BY b.startTime""", Booking.class)
+                .setParameter("from", now)
+                .getResultStream().map(bookingMapper::toDto).toList()));
+        results.add(measure("public, projection", () -> bookingService.getAvailableBookings()));
+
+        //Same derived keyset query the admin listing used to run, returning entities
+        var entityWindows = new JpaRepositoryFactory(entityManager).getRepository(EntityWindows.class);
+        results.add(measure("admin page, entities", () -> entityWindows
+                .findByDeleted(false, ScrollPosition.keyset(), Sort.by("id"), Limit.of(PAGE_SIZE))
+                .getContent().stream().map(bookingMapper::toDto).toList()));
+        results.add(measure("admin page, projection", () -> bookingRepository
+                .findByDeleted(false, ScrollPosition.keyset(), Sort.by("id"), Limit.of(PAGE_SIZE))
+                .getContent()));
+
+        System.out.printf("%n%d available + %d booked slots, admin page of %d%n", SLOTS, SLOTS, PAGE_SIZE);
+        System.out.printf("%-24s %12s %16s %10s %10s%n", "read", "json bytes", "alloc bytes/req", "managed", "us/req");
+        for (Result r : results) {
+            System.out.printf("%-24s %12d %16d %10d %10.0f%n",
+                    r.name(), r.jsonBytes(), r.allocatedBytes(), r.managedEntities(), r.micros());
+        }
+    }
+
+    private Result measure(String name, Supplier<List<?>> read) throws Exception {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+
+        //Warm up, and the one response whose size and leftover entities get reported
+        int[] managed = new int[1];
+        byte[] json = transaction.execute(s -> {
+            try {
+                var body = objectMapper.writeValueAsBytes(read.get());
+                managed[0] = entityManager.unwrap(SessionImplementor.class)
+                        .getPersistenceContextInternal().getNumberOfManagedEntities();
+                return body;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        for (int i = 0; i < ITERATIONS / 2; i++) transaction.execute(s -> read.get());
+
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            transaction.execute(s -> {
+                try {
+                    return objectMapper.writeValueAsBytes(read.get());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        double micros = (System.nanoTime() - start) / 1000.0 / ITERATIONS;
+        long perRequest = (threads.getCurrentThreadAllocatedBytes() - allocated) / ITERATIONS;
+
+        return new Result(name, json.length, perRequest, managed[0], micros);
+    }
+
+    //Far enough out not to meet anything the other tests made, one hour per slot
+    private void seed() {
+        var first = OffsetDateTime.now().plusYears(5).truncatedTo(ChronoUnit.HOURS);
+        List<Booking> slots = new ArrayList<>();
+        for (int i = 0; i < SLOTS * 2; i++) {
+            var slot = new Booking();
+            slot.setStartTime(first.plusHours(i));
+            slot.setEndTime(first.plusHours(i + 1));
+            if (i % 2 == 1) {
+                slot.setStatus(BookingStatus.PENDING);
+                slot.setName("Requester " + i);
+                slot.setEmail("requester" + i + "@example.com");
+                slot.setPhone("01234567890");
+                slot.setTopic("Kitchen refit quote");
+                slot.setNotes("Would like to talk through the options for the extension, ideally with rough costs. ".repeat(3));
+            }
+            slots.add(slot);
+        }
+        bookingRepository.saveAll(slots).forEach(b -> seeded.add(b.getId()));
+    }
+}
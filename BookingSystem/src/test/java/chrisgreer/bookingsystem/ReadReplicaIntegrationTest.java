@@ -0,0 +1,184 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.services.EmailService;
+import chrisgreer.bookingsystem.services.IdempotencyService;
+import chrisgreer.bookingsystem.services.IdempotencyTestHooks;
+import chrisgreer.bookingsystem.web.ReadYourWritesFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//Two independent databases: the usual test one as the primary, an embedded Postgres standing in for the replica.
+//Nothing replicates between them, so which one answered shows in what comes back
+@SpringBootTest(properties = "booking.datasource.replica.read-your-writes=2s")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@DirtiesContext
+public class ReadReplicaIntegrationTest {
+
+    private static final int REPLICA_ONLY_ID = 900_001;
+    private static final String ADMIN_ORIGIN = "https://chrisgreer.uk";
+
+    private static EmbeddedPostgres replica;
+
+    @DynamicPropertySource
+    static void replicaProperties(DynamicPropertyRegistry registry) throws IOException {
+        replica = EmbeddedPostgres.builder().start();
+        Flyway.configure().dataSource(replica.getPostgresDatabase()).load().migrate();
+        registry.add("booking.datasource.replica.url", () -> replica.getJdbcUrl("postgres", "postgres"));
+        registry.add("booking.datasource.replica.username", () -> "postgres");
+        registry.add("booking.datasource.replica.password", () -> "");
+    }
+
+    @AfterAll
+    static void stopReplica() throws IOException {
+        replica.close();
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    @Value("${admin.username}")
+    private String adminUsername;
+
+    @Value("${admin.password}")
+    private String adminPassword;
+
+    @AfterEach
+    void cleanUp() {
+        bookingRepository.deleteAll();
+        replicaJdbc().update("DELETE FROM booking");
+    }
+
+    @Test
+    void readOnlyListings_comeFromTheReplica() throws Exception {
+        var start = OffsetDateTime.now().plusDays(3).truncatedTo(ChronoUnit.HOURS);
+        replicaJdbc().update("INSERT INTO booking (id, start_time, end_time) VALUES (?, ?, ?)",
+                REPLICA_ONLY_ID, start, start.plusHours(1));
+        Booking onPrimary = TestUtil.persistAvailableBooking(bookingRepository);
+
+        mockMvc.perform(get("/booking/admin").with(admin("10.2.0.1")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", hasItem(REPLICA_ONLY_ID)))
+                .andExpect(jsonPath("$[*].id", not(hasItem(onPrimary.getId().intValue()))));
+
+        var day = start.toLocalDate().toString();
+        mockMvc.perform(get("/booking/public").param("from", day).param("to", day).with(from("10.2.0.1")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", hasItem(REPLICA_ONLY_ID)));
+
+        //The save itself went to the primary
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT count(*) FROM booking", Integer.class));
+    }
+
+    @Test
+    void clientsOwnWrite_isReadBackFromThePrimary_forAWhile() throws Exception {
+        //From the admin page, which is another site: the cookie has to be one a cross-site fetch sends back
+        var written = mockMvc.perform(post("/booking/admin").with(admin("10.2.0.2"))
+                        .header(HttpHeaders.ORIGIN, ADMIN_ORIGIN)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(TestUtil.createValidBookingSlot())))
+                .andExpect(status().is2xxSuccessful())
+                .andExpect(header().string(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true"))
+                .andExpect(header().string(HttpHeaders.SET_COOKIE, allOf(
+                        containsString(ReadYourWritesFilter.WRITTEN_COOKIE + "="),
+                        containsString("SameSite=None"), containsString("Secure"))))
+                .andReturn().getResponse().getCookie(ReadYourWritesFilter.WRITTEN_COOKIE);
+        int created = jdbcTemplate.queryForObject("SELECT id FROM booking", Integer.class);
+
+        //Same client on a new network
+        mockMvc.perform(get("/booking/admin").with(admin("10.2.0.3"))
+                        .header(HttpHeaders.ORIGIN, ADMIN_ORIGIN).cookie(written))
+                .andExpect(jsonPath("$[*].id", hasItem(created)));
+        //Another client behind the writer's address reads the replica, which hasn't got it
+        mockMvc.perform(get("/booking/admin").with(admin("10.2.0.2")).header(HttpHeaders.ORIGIN, ADMIN_ORIGIN))
+                .andExpect(jsonPath("$[*].id", not(hasItem(created))));
+
+        Thread.sleep(2500);
+        String afterWindow = mockMvc.perform(get("/booking/admin").with(admin("10.2.0.3"))
+                        .header(HttpHeaders.ORIGIN, ADMIN_ORIGIN).cookie(written))
+                .andReturn().getResponse().getContentAsString();
+        assertEquals(List.of(), JsonPath.read(afterWindow, "$[*].id"));
+    }
+
+    @Test
+    void idempotencyKeys_areReadFromThePrimary() {
+        assertTrue(idempotencyService.claim("replica-key", "POST /booking/admin"));
+        idempotencyService.complete("replica-key", "POST /booking/admin", 201, null, new byte[0]);
+        IdempotencyTestHooks.forgetCachedResponses(idempotencyService);
+
+        try {
+            assertTrue(idempotencyService.find("replica-key").isPresent());
+        } finally {
+            jdbcTemplate.update("DELETE FROM idempotency_key");
+        }
+    }
+
+    private JdbcTemplate replicaJdbc() {
+        return new JdbcTemplate(replica.getPostgresDatabase());
+    }
+
+    private RequestPostProcessor admin(String address) {
+        return request -> from(address).postProcessRequest(httpBasic(adminUsername, adminPassword).postProcessRequest(request));
+    }
+
+    private static RequestPostProcessor from(String address) {
+        return request -> {
+            request.setRemoteAddr(address);
+            return request;
+        };
+    }
+}
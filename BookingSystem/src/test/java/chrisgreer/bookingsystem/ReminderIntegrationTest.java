@@ -0,0 +1,202 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.dtos.UpdateBookingStatusDto;
+import chrisgreer.bookingsystem.entities.Booking;
+import chrisgreer.bookingsystem.model.BookingStatus;
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.services.EmailService;
+import chrisgreer.bookingsystem.services.ReminderService;
+import chrisgreer.bookingsystem.utils.TimingWheel;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//A booking two hours out has its 72h reminder already due and its 1h one still in the wheel
+@SpringBootTest(properties = {"booking.reminders.before=72h,1h", "booking.reminders.retry-delay=1s"})
+@AutoConfigureMockMvc(addFilters = false)
+@ActiveProfiles("test")
+public class ReminderIntegrationTest {
+
+    private static final Duration LATE_REMINDER = Duration.ofHours(72);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private ReminderService reminderService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    @AfterEach
+    void cleanUp() {
+        bookingRepository.deleteAll();
+        jdbcTemplate.update("DELETE FROM booking_reminder");
+    }
+
+    @Test
+    void confirmedBooking_getsItsReminderOnce() throws Exception {
+        Booking booking = TestUtil.createValidBooking();
+        booking.setStartTime(OffsetDateTime.now().plusHours(2).truncatedTo(ChronoUnit.MINUTES));
+        booking.setEndTime(booking.getStartTime().plusHours(1));
+        bookingRepository.save(booking);
+        setStatus(booking, BookingStatus.CONFIRMED);
+
+        verify(emailService, timeout(5000))
+                .sendBookingReminder(argThat(b -> b.getId().equals(booking.getId())), eq(LATE_REMINDER));
+        assertTrue(reminderService.isScheduled(booking.getId()));
+
+        //As after a restart, it's back in the wheel and fires again, but it was already claimed
+        reminderService.refresh();
+        verify(emailService, after(2500).times(1)).sendBookingReminder(any(), eq(LATE_REMINDER));
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM booking_reminder WHERE booking_id = ?", Integer.class, booking.getId()));
+    }
+
+    @Test
+    void reconfirmedBooking_getsItsRemindersAgain() throws Exception {
+        Booking booking = TestUtil.createValidBooking();
+        booking.setStartTime(OffsetDateTime.now().plusHours(2).truncatedTo(ChronoUnit.MINUTES));
+        booking.setEndTime(booking.getStartTime().plusHours(1));
+        bookingRepository.save(booking);
+        setStatus(booking, BookingStatus.CONFIRMED);
+        verify(emailService, timeout(5000)).sendBookingReminder(any(), eq(LATE_REMINDER));
+
+        //Given up and taken by someone else, who is owed the reminder too
+        setStatus(booking, BookingStatus.CANCELLED);
+        setStatus(booking, BookingStatus.AVAILABLE);
+        setStatus(booking, BookingStatus.CONFIRMED);
+        verify(emailService, timeout(5000).times(2))
+                .sendBookingReminder(argThat(b -> b.getId().equals(booking.getId())), eq(LATE_REMINDER));
+    }
+
+    @Test
+    void failedReminder_isRetried_soon() throws Exception {
+        Booking booking = TestUtil.createValidBooking();
+        booking.setStartTime(OffsetDateTime.now().plusHours(2).truncatedTo(ChronoUnit.MINUTES));
+        booking.setEndTime(booking.getStartTime().plusHours(1));
+        bookingRepository.save(booking);
+        doThrow(new IllegalStateException("database unavailable")).doNothing()
+                .when(emailService).sendBookingReminder(any(), eq(LATE_REMINDER));
+
+        setStatus(booking, BookingStatus.CONFIRMED);
+
+        //The first attempt rolled its claim back, the retry is what's recorded, and the last try
+        verify(emailService, timeout(5000).times(2)).sendBookingReminder(any(), eq(LATE_REMINDER));
+        verify(emailService, after(1500).times(2)).sendBookingReminder(any(), eq(LATE_REMINDER));
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM booking_reminder WHERE booking_id = ?", Integer.class, booking.getId()));
+    }
+
+    @Test
+    void purgeSent_dropsClaims_forStartedOrMissingBookings_only() {
+        Booking upcoming = TestUtil.persistAvailableBooking(bookingRepository);
+        Booking started = TestUtil.createValidBooking();
+        started.setStartTime(OffsetDateTime.now().minusMinutes(5).truncatedTo(ChronoUnit.MINUTES));
+        started.setEndTime(started.getStartTime().plusHours(1));
+        bookingRepository.save(started);
+        for (long id : new long[] {upcoming.getId(), started.getId(), 999_999}) {
+            jdbcTemplate.update("INSERT INTO booking_reminder (booking_id, minutes_before) VALUES (?, 60)", id);
+        }
+
+        reminderService.purgeSent();
+
+        assertEquals(List.of(upcoming.getId()),
+                jdbcTemplate.queryForList("SELECT booking_id FROM booking_reminder", Long.class));
+    }
+
+    @Test
+    void reminders_areCancelled_whenBookingIsNoLongerConfirmed() throws Exception {
+        Booking unconfirmed = TestUtil.persistAvailableBooking(bookingRepository);
+        setStatus(unconfirmed, BookingStatus.CONFIRMED);
+        assertTrue(reminderService.isScheduled(unconfirmed.getId()));
+        setStatus(unconfirmed, BookingStatus.CANCELLED);
+        assertFalse(reminderService.isScheduled(unconfirmed.getId()));
+
+        Booking deleted = TestUtil.persistAvailableBooking(bookingRepository);
+        setStatus(deleted, BookingStatus.CONFIRMED);
+        mockMvc.perform(delete("/booking/admin/{id}", deleted.getId()))
+                .andExpect(status().isNoContent());
+        assertFalse(reminderService.isScheduled(deleted.getId()));
+    }
+
+    @Test
+    void timingWheel_firesHundredThousandTimersOnTime_andSkipsCancelledOnes() {
+        int timers = 100_000;
+        var random = new Random(42);
+        //Simulated clock in millisecond ticks, timers spread over ~28 hours so every level gets used
+        var wheel = new TimingWheel<Integer>(1, 0);
+        long[] due = new long[timers];
+        for (int i = 0; i < timers; i++) {
+            due[i] = random.nextLong(1, 100_000_000);
+            wheel.schedule(i, due[i]);
+        }
+        var cancelled = new BitSet();
+        for (int i = 0; i < timers; i += 3) {
+            assertTrue(wheel.cancel(i));
+            cancelled.set(i);
+        }
+
+        var fired = new BitSet();
+        long previous = 0;
+        while (wheel.size() > 0) {
+            long now = previous + random.nextLong(1, 2_000_000);
+            for (int key : wheel.advance(now)) {
+                assertFalse(cancelled.get(key), "cancelled timer fired");
+                assertFalse(fired.get(key), "timer fired twice");
+                //Not before its time, and in the advance that passed it
+                assertTrue(due[key] > previous && due[key] <= now, "timer " + key + " fired out of step");
+                fired.set(key);
+            }
+            previous = now;
+        }
+        assertEquals(timers - cancelled.cardinality(), fired.cardinality());
+    }
+
+    private void setStatus(Booking booking, BookingStatus status) throws Exception {
+        UpdateBookingStatusDto update = new UpdateBookingStatusDto();
+        update.setStatus(status);
+        mockMvc.perform(patch("/booking/admin/{id}", booking.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(update)))
+                .andExpect(status().isNoContent());
+    }
+}
@@ -3,6 +3,7 @@ package chrisgreer.bookingsystem;
 import chrisgreer.bookingsystem.entities.Booking;
 import chrisgreer.bookingsystem.repositories.BookingRepository;
 import chrisgreer.bookingsystem.services.EmailService;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -15,7 +16,7 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import java.time.OffsetDateTime;
 
-import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -65,6 +66,12 @@ public class SecurityIntegrationTest {
     private static final String UPDATE_STATUS_JSON = """
         {"status": "CONFIRMED"}""";
 
+    //Not @Transactional, so clear up (slots left behind would clash with later ones)
+    @AfterEach
+    void cleanUp() {
+        bookingRepository.deleteAll();
+    }
+
     @Test
     void getAllBookings_requiresNoAuth() throws Exception {
         // No auth leads to 200
@@ -72,6 +79,12 @@ public class SecurityIntegrationTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    void getAvailabilitySummary_requiresNoAuth() throws Exception {
+        mockMvc.perform(get("/booking/public/summary"))
+                .andExpect(status().isOk());
+    }
+
     @Test
     void createBooking_requiresAuth() throws Exception {
         // Without auth
@@ -131,7 +144,7 @@ public class SecurityIntegrationTest {
                 .andExpect(status().isNoContent());
 
         //Confirm actually deleted
-        assertNull(bookingRepository.findById(booking.getId()).orElse(null));
+        assertTrue(bookingRepository.findById(booking.getId()).orElseThrow().isDeleted());
 
     }
 }
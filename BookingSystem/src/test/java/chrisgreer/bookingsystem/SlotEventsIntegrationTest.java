@@ -0,0 +1,153 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.services.BookingService;
+import chrisgreer.bookingsystem.services.EmailService;
+import chrisgreer.bookingsystem.services.SlotEventBroadcaster;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+//Not @Transactional, events only go out after commit
+@SpringBootTest(properties = {
+        "booking.events.max-subscribers=10000",
+        "booking.events.buffer-size=16",
+        "booking.events.sender-threads=4"
+})
+@AutoConfigureMockMvc(addFilters = false)
+@ActiveProfiles("test")
+public class SlotEventsIntegrationTest {
+
+    private static final int SUBSCRIBERS = 5000;
+    private static final int STUCK = 2;
+    private static final int EVENTS = 24;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private SlotEventBroadcaster broadcaster;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    @AfterEach
+    void cleanUp() {
+        broadcaster.closeAll();
+        bookingRepository.deleteAll();
+    }
+
+    /// Stands in for a connection, counts the named events written to it
+    static class RecordingEmitter extends SseEmitter {
+        final AtomicInteger events = new AtomicInteger();
+        final CountDownLatch completed = new CountDownLatch(1);
+        final CountDownLatch received;
+        final CountDownLatch blockUntil;
+
+        RecordingEmitter(CountDownLatch received, CountDownLatch blockUntil) {
+            this.received = received;
+            this.blockUntil = blockUntil;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            try {
+                //A client that stopped reading, the write never returns
+                if (blockUntil != null) blockUntil.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            boolean named = builder.build().stream().anyMatch(d -> d.getData().toString().contains("event:"));
+            if (named) {
+                events.incrementAndGet();
+                received.countDown();
+            }
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed.countDown();
+        }
+    }
+
+    @Test
+    void thousandsOfSubscribers_allGetEveryChange_andStuckOnesAreDropped() throws Exception {
+        var received = new CountDownLatch(SUBSCRIBERS * EVENTS);
+        var release = new CountDownLatch(1);
+        long droppedBefore = broadcaster.droppedCount();
+
+        List<RecordingEmitter> fast = new ArrayList<>();
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            var emitter = new RecordingEmitter(received, null);
+            assertTrue(broadcaster.register(emitter));
+            fast.add(emitter);
+        }
+        List<RecordingEmitter> stuck = new ArrayList<>();
+        for (int i = 0; i < STUCK; i++) {
+            var emitter = new RecordingEmitter(new CountDownLatch(0), release);
+            assertTrue(broadcaster.register(emitter));
+            stuck.add(emitter);
+        }
+
+        //Would hang here if publishing waited on the stuck clients
+        for (int i = 0; i < EVENTS; i++) {
+            bookingService.createBooking(TestUtil.createValidBookingSlot());
+        }
+
+        assertTrue(received.await(30, TimeUnit.SECONDS), "fast subscribers missed events");
+        assertTrue(fast.stream().allMatch(e -> e.events.get() == EVENTS));
+        assertEquals(STUCK, broadcaster.droppedCount() - droppedBefore);
+        assertEquals(SUBSCRIBERS, broadcaster.subscriberCount());
+
+        //Once their write returns the sender finishes them off
+        release.countDown();
+        for (var emitter : stuck) {
+            assertTrue(emitter.completed.await(10, TimeUnit.SECONDS));
+            assertEquals(0, emitter.events.get());
+        }
+    }
+
+    @Test
+    void eventsEndpoint_streamsCreatedSlot() throws Exception {
+        var result = mockMvc.perform(get("/booking/public/events").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        bookingService.createBooking(TestUtil.createValidBookingSlot());
+
+        var response = result.getResponse();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!response.getContentAsString().contains("event:created") && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        String body = response.getContentAsString();
+        assertTrue(body.contains("event:created"), body);
+        assertTrue(body.contains("\"change\":\"CREATED\""), body);
+        assertTrue(response.getContentType().startsWith(MediaType.TEXT_EVENT_STREAM_VALUE));
+    }
+}
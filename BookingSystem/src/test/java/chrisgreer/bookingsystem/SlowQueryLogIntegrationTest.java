@@ -0,0 +1,103 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.repositories.BookingRepository;
+import chrisgreer.bookingsystem.services.EmailService;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "booking.slow-query.threshold=40ms")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class SlowQueryLogIntegrationTest {
+
+    private static final String SLOW_SELECT = "SELECT CAST(pg_sleep(?) AS text)";
+    private static final String SLOW_INSERT = "INSERT INTO booking (start_time, end_time) SELECT ?, ? FROM pg_sleep(0.05)";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    @Value("${admin.username}")
+    private String adminUsername;
+
+    @Value("${admin.password}")
+    private String adminPassword;
+
+    @AfterEach
+    void cleanUp() {
+        bookingRepository.deleteAll();
+    }
+
+    @Test
+    void slowSelect_isListedWithItsParameters_andAnalyzedPlan() throws Exception {
+        jdbcTemplate.queryForObject(SLOW_SELECT, String.class, 0.05);
+
+        var entry = awaitListed(SLOW_SELECT);
+        assertTrue(((Number) entry.get("elapsedMillis")).longValue() >= 50);
+        assertEquals("[1=0.05]", entry.get("parameters"));
+        var plan = (String) entry.get("plan");
+        assertTrue(plan.contains("actual time=") && plan.contains("Execution Time"), plan);
+    }
+
+    @Test
+    void slowWrite_getsItsPlan_withoutRunningAgain() throws Exception {
+        var start = OffsetDateTime.now().plusDays(3).truncatedTo(ChronoUnit.HOURS);
+        jdbcTemplate.update(SLOW_INSERT, start, start.plusHours(1));
+
+        var plan = (String) awaitListed(SLOW_INSERT).get("plan");
+        assertTrue(plan.contains("Insert on booking"), plan);
+        assertFalse(plan.contains("actual time"), plan);
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT count(*) FROM booking", Integer.class));
+    }
+
+    @Test
+    void slowQueries_requireAuth() throws Exception {
+        mockMvc.perform(get("/booking/admin/slow-queries"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    //Logged and explained in the background
+    private Map<String, Object> awaitListed(String sql) throws Exception {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            String json = mockMvc.perform(get("/booking/admin/slow-queries").with(httpBasic(adminUsername, adminPassword)))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            List<Map<String, Object>> listed = JsonPath.read(json, "$");
+            var entry = listed.stream().filter(e -> sql.equals(e.get("sql"))).findFirst();
+            if (entry.isPresent()) return entry.get();
+            Thread.sleep(50);
+        }
+        return fail(sql + " never showed up");
+    }
+}
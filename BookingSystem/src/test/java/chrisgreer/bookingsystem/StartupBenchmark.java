@@ -0,0 +1,196 @@
+package chrisgreer.bookingsystem;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/// Cold start, measured the way a user feels it: from launching the JVM to the first successful
+/// GET /booking/public. Each round starts a fresh process for every variant, in turn:
+///  - standard: java -jar on the plain exec jar
+///  - aot: the -Pfast-start jar, extracted, with spring.aot.enabled
+///  - aot+cds: the same plus the AppCDS archive from a training run, as the Dockerfile runs it
+///
+/// The fast-start jar is extracted and trained here with the Dockerfile's own commands. Both runs
+/// share one embedded Postgres, migrated up front so no variant pays for Flyway's first run.
+///
+/// Build both jars first (they have the same name, so copy the first one out of the way):
+///   ./mvnw package -DskipTests && cp target/BookingSystem-0.0.1-SNAPSHOT-exec.jar target/standard.jar
+///   ./mvnw -Pfast-start package -DskipTests
+/// Run with: mvn -Pbenchmark test -Dtest=StartupBenchmark
+/// Tune with -Dstartup.rounds=5 -Dstartup.standardJar=target/standard.jar
+///   -Dstartup.fastStartJar=target/BookingSystem-0.0.1-SNAPSHOT-exec.jar
+///   -Dstartup.jvmArgs="-XX:ActiveProcessorCount=1 -Xmx256m" (closer to a shared-cpu-1x, 512 MB Fly machine)
+/// Each process's output is kept in target/startup/.
+@Tag("benchmark")
+public class StartupBenchmark {
+
+    private static final int ROUNDS = Integer.getInteger("startup.rounds", 5);
+    private static final Path STANDARD_JAR = Path.of(System.getProperty("startup.standardJar", "target/standard.jar"));
+    private static final Path FAST_START_JAR = Path.of(System.getProperty("startup.fastStartJar",
+            "target/BookingSystem-0.0.1-SNAPSHOT-exec.jar"));
+    private static final List<String> JVM_ARGS = Arrays.stream(System.getProperty("startup.jvmArgs", "").split("\\s+"))
+            .filter(arg -> !arg.isBlank())
+            .toList();
+
+    private static final Path OUT = Path.of("target", "startup");
+    private static final Duration GIVE_UP = Duration.ofMinutes(2);
+
+    record Variant(String name, Path directory, List<String> command) { }
+
+    @Test
+    void timeToFirstRequest() throws Exception {
+        assumeTrue(Files.exists(STANDARD_JAR) && Files.exists(FAST_START_JAR),
+                "Build both jars first, see the class comment");
+        Files.createDirectories(OUT);
+
+        try (var postgres = EmbeddedPostgres.builder().start()) {
+            Flyway.configure().dataSource(postgres.getPostgresDatabase()).load().migrate();
+            var env = environment(postgres);
+
+            Path fastStart = train(env);
+            var variants = List.of(
+                    new Variant("standard", STANDARD_JAR.toAbsolutePath().getParent(),
+                            java(List.of(), STANDARD_JAR.toAbsolutePath().toString())),
+                    new Variant("aot", fastStart,
+                            java(List.of("-Dspring.aot.enabled=true"), "app.jar")),
+                    new Variant("aot+cds", fastStart,
+                            java(List.of("-XX:SharedArchiveFile=app.jsa", "-Dspring.aot.enabled=true"), "app.jar"))
+            );
+
+            Map<String, List<Long>> millis = new LinkedHashMap<>();
+            variants.forEach(v -> millis.put(v.name(), new ArrayList<>()));
+            for (int round = 1; round <= ROUNDS; round++) {
+                for (var variant : variants) {
+                    long ms = timeToFirstRequest(variant, env, round);
+                    millis.get(variant.name()).add(ms);
+                    System.out.printf("round %d  %-8s %6d ms%n", round, variant.name(), ms);
+                }
+            }
+
+            System.out.printf("%n%d round(s), %d CPU(s), jvm args %s%n", ROUNDS,
+                    Runtime.getRuntime().availableProcessors(), JVM_ARGS);
+            System.out.printf("%-8s %8s %8s %8s%n", "variant", "min ms", "p50 ms", "max ms");
+            millis.forEach((name, times) -> {
+                var sorted = times.stream().sorted().toList();
+                System.out.printf("%-8s %8d %8d %8d%n", name,
+                        sorted.get(0), sorted.get(sorted.size() / 2), sorted.get(sorted.size() - 1));
+            });
+        }
+    }
+
+    /// Extract and training run, the same commands as the Dockerfile
+    private Path train(Map<String, String> env) throws Exception {
+        Path dir = OUT.resolve("fast-start").toAbsolutePath();
+        Files.createDirectories(dir);
+        Files.copy(FAST_START_JAR, dir.resolve("app.jar"), StandardCopyOption.REPLACE_EXISTING);
+        run(dir, env, "extract", java(List.of("-Djarmode=tools"), "app.jar",
+                "extract", "--destination", "application", "--force"));
+
+        Path application = dir.resolve("application");
+        Files.deleteIfExists(application.resolve("app.jsa"));
+        run(application, env, "training", java(List.of(
+                "-XX:ArchiveClassesAtExit=app.jsa",
+                "-Dspring.aot.enabled=true",
+                "-Dspring.context.exit=onRefresh",
+                "-Dspring.jpa.properties.hibernate.boot.allow_jdbc_metadata_access=false"), "app.jar"));
+        return application;
+    }
+
+    private long timeToFirstRequest(Variant variant, Map<String, String> env, int round) throws Exception {
+        int port = freePort();
+        var command = new ArrayList<>(variant.command());
+        command.add("--server.port=" + port);
+        var log = OUT.resolve(variant.name().replace('+', '-') + "-" + round + ".log").toFile();
+        var builder = new ProcessBuilder(command)
+                .directory(variant.directory().toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(log);
+        builder.environment().putAll(env);
+
+        var client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/booking/public"))
+                .timeout(Duration.ofSeconds(10))
+                .build();
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try {
+            while (System.nanoTime() - start < GIVE_UP.toNanos()) {
+                if (!process.isAlive()) throw new IllegalStateException(variant.name() + " exited, see " + log);
+                try {
+                    if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    }
+                } catch (IOException notListeningYet) {
+                    //Keep trying
+                }
+                Thread.sleep(10);
+            }
+            throw new IllegalStateException(variant.name() + " didn't answer within " + GIVE_UP + ", see " + log);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) process.destroyForcibly().waitFor();
+        }
+    }
+
+    private static void run(Path directory, Map<String, String> env, String name, List<String> command) throws Exception {
+        var builder = new ProcessBuilder(command)
+                .directory(directory.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(OUT.resolve(name + ".log").toFile());
+        builder.environment().putAll(env);
+        assertEquals(0, builder.start().waitFor(), name + " failed, see target/startup/" + name + ".log");
+    }
+
+    static List<String> java(List<String> options, String jar, String... args) {
+        var command = new ArrayList<String>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(JVM_ARGS);
+        command.addAll(options);
+        command.add("-jar");
+        command.add(jar);
+        command.addAll(List.of(args));
+        return command;
+    }
+
+    //What application.properties reads from the environment, also used by WarmUpBenchmark
+    static Map<String, String> environment(EmbeddedPostgres postgres) {
+        var env = new LinkedHashMap<String, String>();
+        env.put("DATABASE_URL", postgres.getJdbcUrl("postgres", "postgres"));
+        env.put("DB_USERNAME", "postgres");
+        env.put("DB_PASSWORD", "");
+        env.put("API_USERNAME", "startup");
+        env.put("API_PASSWORD", "startup");
+        env.put("MAIL_USERNAME", "startup@example.com");
+        env.put("MAIL_PASSWORD", "unused");
+        env.put("ADMIN_TOKEN_SECRET", "startup-benchmark-secret-32-bytes");
+        return env;
+    }
+
+    static int freePort() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -1,15 +1,31 @@
 package chrisgreer.bookingsystem;
 
 import chrisgreer.bookingsystem.dtos.CreateAvailableSlotDto;
+import chrisgreer.bookingsystem.dtos.CreateRecurringSlotsDto;
 import chrisgreer.bookingsystem.dtos.RequestBookingDto;
 import chrisgreer.bookingsystem.entities.Booking;
 import chrisgreer.bookingsystem.model.BookingStatus;
 import chrisgreer.bookingsystem.repositories.BookingRepository;
 
+import java.time.LocalDate;
+import java.time.LocalTime;
 import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.time.DayOfWeek.*;
 
 public class TestUtil {
 
+    //Live slots can't overlap, so every slot handed out gets its own hour
+    private static final OffsetDateTime FIRST_SLOT = OffsetDateTime.now().plusDays(2).truncatedTo(ChronoUnit.HOURS);
+    private static final AtomicInteger nextSlot = new AtomicInteger();
+
+    public static OffsetDateTime nextSlotStart() {
+        return FIRST_SLOT.plusHours(nextSlot.getAndIncrement());
+    }
+
     public static Booking persistAvailableBooking(BookingRepository bookingRepository){
         Booking booking = createValidBooking();
         bookingRepository.save(booking);
@@ -21,15 +37,17 @@ public class TestUtil {
         booking.setName("Bob");
         booking.setEmail("bob@example.com");
         booking.setStatus(BookingStatus.AVAILABLE);
-        booking.setStartTime(OffsetDateTime.now().plusDays(1));
-        booking.setEndTime(OffsetDateTime.now().plusDays(1).plusHours(1));
+        var start = nextSlotStart();
+        booking.setStartTime(start);
+        booking.setEndTime(start.plusHours(1));
         return booking;
     }
 
     public static CreateAvailableSlotDto createValidBookingSlot() {
         CreateAvailableSlotDto request = new CreateAvailableSlotDto();
-        request.setStartTime(OffsetDateTime.now().plusDays(1));
-        request.setEndTime(OffsetDateTime.now().plusDays(1).plusHours(1));
+        var start = nextSlotStart();
+        request.setStartTime(start);
+        request.setEndTime(start.plusHours(1));
         return request;
     }
 
@@ -41,4 +59,16 @@ public class TestUtil {
         return request;
     }
 
+    public static CreateRecurringSlotsDto createWeekdayRecurringSlots() {
+        CreateRecurringSlotsDto request = new CreateRecurringSlotsDto();
+        request.setDaysOfWeek(EnumSet.of(MONDAY, TUESDAY, WEDNESDAY, THURSDAY, FRIDAY));
+        request.setDayStart(LocalTime.of(9, 0));
+        request.setDayEnd(LocalTime.of(17, 0));
+        request.setSlotMinutes(30);
+        //Far enough ahead that no slot has already passed
+        request.setStartDate(LocalDate.now().plusYears(1));
+        request.setWeeks(2);
+        return request;
+    }
+
 }
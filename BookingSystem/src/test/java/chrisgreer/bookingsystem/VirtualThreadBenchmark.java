@@ -0,0 +1,187 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.services.EmailService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
+import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.web.servlet.function.RouterFunction;
+import org.springframework.web.servlet.function.RouterFunctions;
+import org.springframework.web.servlet.function.ServerRequest;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/// Concurrent request capacity with Tomcat on platform threads vs virtual threads.
+///
+/// Boots the app twice on a random port and drives it with a fixed number of concurrent
+/// clients against two blocking endpoints:
+///  - remote: sleeps, standing in for a slow downstream call (SMTP, HTTP)
+///  - db: pg_sleep through the real Hikari pool, so it's capped by maximum-pool-size
+///
+/// Run with: mvn -Pbenchmark test -Dtest=VirtualThreadBenchmark
+/// Tune with -Dbench.concurrency=400 -Dbench.seconds=10 -Dbench.ioMillis=50 -Dbench.tomcatThreads=200
+@Tag("benchmark")
+public class VirtualThreadBenchmark {
+
+    private static final int CONCURRENCY = Integer.getInteger("bench.concurrency", 400);
+    private static final int SECONDS = Integer.getInteger("bench.seconds", 10);
+    private static final int IO_MILLIS = Integer.getInteger("bench.ioMillis", 50);
+    private static final int TOMCAT_THREADS = Integer.getInteger("bench.tomcatThreads", 200);
+
+    record Result(String mode, String endpoint, long requests, long errors, double seconds, long[] latenciesMicros) {
+
+        double throughput() {
+            return requests / seconds;
+        }
+
+        long percentile(double p) {
+            if (latenciesMicros.length == 0) return 0;
+            int index = (int) Math.ceil(p / 100.0 * latenciesMicros.length) - 1;
+            return latenciesMicros[Math.max(0, Math.min(index, latenciesMicros.length - 1))];
+        }
+    }
+
+    @Test
+    void compareConcurrentCapacity() throws Exception {
+        List<Result> results = new ArrayList<>();
+        for (boolean virtual : new boolean[]{false, true}) {
+            try (var context = start(virtual)) {
+                int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+                String mode = virtual ? "virtual" : "platform(" + TOMCAT_THREADS + ")";
+
+                //Short warm up so JIT and the pool aren't part of the numbers
+                drive(mode, "remote", port, Duration.ofSeconds(2));
+                results.add(drive(mode, "remote", port, Duration.ofSeconds(SECONDS)));
+                results.add(drive(mode, "db", port, Duration.ofSeconds(SECONDS)));
+            }
+        }
+
+        System.out.printf("%nConcurrency %d, %dms blocking I/O per request, %d CPU(s)%n",
+                CONCURRENCY, IO_MILLIS, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-14s %-8s %10s %8s %10s %10s %10s%n",
+                "threads", "endpoint", "req/s", "errors", "p50 ms", "p99 ms", "max ms");
+        for (Result r : results) {
+            System.out.printf("%-14s %-8s %10.0f %8d %10.1f %10.1f %10.1f%n",
+                    r.mode(), r.endpoint(), r.throughput(), r.errors(),
+                    r.percentile(50) / 1000.0, r.percentile(99) / 1000.0, r.percentile(100) / 1000.0);
+        }
+    }
+
+    private ConfigurableApplicationContext start(boolean virtual) {
+        //As arguments rather than default properties, so they win over application.properties
+        return new SpringApplicationBuilder(BookingSystemApplication.class, BenchmarkEndpoints.class)
+                .profiles("test")
+                .run(
+                        "--server.port=0",
+                        "--spring.threads.virtual.enabled=" + virtual,
+                        "--server.tomcat.threads.max=" + TOMCAT_THREADS,
+                        "--spring.jpa.show-sql=false"
+                );
+    }
+
+    /// Closed loop: CONCURRENCY clients each send their next request as soon as the last returns
+    private Result drive(String mode, String endpoint, int port, Duration duration) throws Exception {
+        var uri = URI.create("http://localhost:" + port + "/bench/" + endpoint + "?ms=" + IO_MILLIS);
+        var completed = new LongAdder();
+        var errors = new LongAdder();
+        var latencies = new ConcurrentLinkedQueue<long[]>();
+
+        try (var clients = Executors.newVirtualThreadPerTaskExecutor();
+             var http = HttpClient.newBuilder()
+                     .version(HttpClient.Version.HTTP_1_1)
+                     .connectTimeout(Duration.ofSeconds(10))
+                     .build()) {
+
+            long start = System.nanoTime();
+            long deadline = start + duration.toNanos();
+            for (int i = 0; i < CONCURRENCY; i++) {
+                clients.submit(() -> {
+                    var request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).build();
+                    long[] own = new long[1 << 16];
+                    int count = 0;
+                    while (System.nanoTime() < deadline) {
+                        long sent = System.nanoTime();
+                        try {
+                            var response = http.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200) errors.increment();
+                        } catch (Exception e) {
+                            errors.increment();
+                            continue;
+                        }
+                        if (count == own.length) own = Arrays.copyOf(own, count * 2);
+                        own[count++] = (System.nanoTime() - sent) / 1000;
+                        completed.increment();
+                    }
+                    latencies.add(Arrays.copyOf(own, count));
+                    return null;
+                });
+            }
+            clients.shutdown();
+            clients.awaitTermination(duration.toSeconds() + 60, TimeUnit.SECONDS);
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            return new Result(mode, endpoint, completed.sum(), errors.sum(), seconds, all);
+        }
+    }
+
+    @TestConfiguration
+    static class BenchmarkEndpoints {
+
+        //No auth on the benchmark endpoints, BCrypt would dominate the numbers
+        @Bean
+        @Order(0)
+        SecurityFilterChain benchmarkChain(HttpSecurity http) throws Exception {
+            return http.securityMatcher("/bench/**")
+                    .csrf(AbstractHttpConfigurer::disable)
+                    .authorizeHttpRequests(c -> c.anyRequest().permitAll())
+                    .build();
+        }
+
+        @Bean
+        @Primary
+        EmailService benchmarkEmailService() {
+            return Mockito.mock(EmailService.class);
+        }
+
+        //Functional routes rather than a @RestController, so other test contexts don't scan them in
+        @Bean
+        RouterFunction<ServerResponse> blockingEndpoints(JdbcTemplate jdbcTemplate) {
+            return RouterFunctions.route()
+                    .GET("/bench/remote", request -> {
+                        Thread.sleep(millis(request));
+                        return ServerResponse.ok().body("ok");
+                    })
+                    .GET("/bench/db", request -> {
+                        jdbcTemplate.queryForObject("SELECT pg_sleep(?)", Object.class, millis(request) / 1000.0);
+                        return ServerResponse.ok().body("ok");
+                    })
+                    .build();
+        }
+
+        private static int millis(ServerRequest request) {
+            return Integer.parseInt(request.param("ms").orElse("50"));
+        }
+    }
+}
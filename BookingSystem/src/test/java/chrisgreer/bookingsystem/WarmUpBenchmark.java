@@ -0,0 +1,257 @@
+package chrisgreer.bookingsystem;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/// The first minute after a deploy, with and without the warm-up (WarmUpService and the DispatcherServlet
+/// started with the app). Each round starts a
+/// fresh JVM per variant, waits for /actuator/health/readiness to say UP (what Fly waits for) and then
+/// sends read traffic on a fixed schedule for a minute:
+///  - 70% GET /booking/public
+///  - 10% GET /booking/public?from..to
+///  - 10% GET /booking/public/summary
+///  - 10% GET /booking/admin (bearer token, fetched before the clock starts)
+///
+/// Latency is from when each request was due, as in LoadTestBenchmark, and reported per 10 second
+/// window so the curve shows. The database is seeded with 8 weeks of weekday slots, every fifth
+/// one requested, and is shared by both variants.
+///
+/// Build the jar first: ./mvnw package -DskipTests
+/// Run with: mvn -Pbenchmark test -Dtest=WarmUpBenchmark
+/// Tune with -Dwarmup.rounds=3 -Dwarmup.rate=50 -Dwarmup.seconds=60
+///   -Dwarmup.jar=target/BookingSystem-0.0.1-SNAPSHOT-exec.jar
+///   -Dstartup.jvmArgs="-XX:ActiveProcessorCount=1 -Xmx256m" (as StartupBenchmark)
+/// Each process's output is kept in target/warmup/.
+@Tag("benchmark")
+public class WarmUpBenchmark {
+
+    private static final int ROUNDS = Integer.getInteger("warmup.rounds", 3);
+    private static final int RATE = Integer.getInteger("warmup.rate", 50);
+    private static final int SECONDS = Integer.getInteger("warmup.seconds", 60);
+    private static final Path JAR = Path.of(System.getProperty("warmup.jar",
+            "target/BookingSystem-0.0.1-SNAPSHOT-exec.jar"));
+
+    private static final int WINDOW_SECONDS = 10;
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final Path OUT = Path.of("target", "warmup");
+    private static final Duration GIVE_UP = Duration.ofMinutes(3);
+
+    record Variant(String name, List<String> args) { }
+
+    /// One variant's results, across rounds
+    static class Stats {
+        final Histogram firstRequest = new Histogram(HIGHEST_MICROS, 3);
+        final Histogram readyMillis = new Histogram(GIVE_UP.toMillis(), 3);
+        final Histogram all = new ConcurrentHistogram(HIGHEST_MICROS, 3);
+        final List<Histogram> windows = new ArrayList<>();
+        final LongAdder errors = new LongAdder();
+
+        Stats() {
+            for (int i = 0; i < Math.ceilDiv(SECONDS, WINDOW_SECONDS); i++) {
+                windows.add(new ConcurrentHistogram(HIGHEST_MICROS, 3));
+            }
+        }
+    }
+
+    @Test
+    void firstMinute() throws Exception {
+        assumeTrue(Files.exists(JAR), "Build the jar first, see the class comment");
+        Files.createDirectories(OUT);
+
+        try (var postgres = EmbeddedPostgres.builder().start()) {
+            Flyway.configure().dataSource(postgres.getPostgresDatabase()).load().migrate();
+            int slots = seed(new JdbcTemplate(postgres.getPostgresDatabase()));
+            var env = StartupBenchmark.environment(postgres);
+
+            var variants = List.of(
+                    //As before the warm-up: the DispatcherServlet also waited for the first request
+                    new Variant("cold", List.of("--booking.warm-up.iterations=0",
+                            "--spring.mvc.servlet.load-on-startup=-1")),
+                    new Variant("warm", List.of())
+            );
+            Map<String, Stats> results = new LinkedHashMap<>();
+            variants.forEach(v -> results.put(v.name(), new Stats()));
+
+            for (int round = 1; round <= ROUNDS; round++) {
+                for (var variant : variants) {
+                    run(variant, env, round, results.get(variant.name()));
+                    System.out.printf("round %d  %s done%n", round, variant.name());
+                }
+            }
+
+            System.out.printf("%n%d slot(s), %d round(s), %d req/s for %ds, %d CPU(s)%n", slots, ROUNDS, RATE, SECONDS,
+                    Runtime.getRuntime().availableProcessors());
+            System.out.printf("%-6s %9s %12s %9s %9s %9s %9s%n",
+                    "", "ready ms", "1st req ms", "p50 ms", "p99 ms", "max ms", "errors");
+            results.forEach((name, stats) -> System.out.printf("%-6s %9d %12.1f %9.1f %9.1f %9.1f %9d%n",
+                    name, stats.readyMillis.getValueAtPercentile(50),
+                    stats.firstRequest.getValueAtPercentile(50) / 1000.0,
+                    stats.all.getValueAtPercentile(50) / 1000.0, stats.all.getValueAtPercentile(99) / 1000.0,
+                    stats.all.getMaxValue() / 1000.0, stats.errors.sum()));
+
+            System.out.printf("%nPer %ds window, p50 / p99 ms%n", WINDOW_SECONDS);
+            results.forEach((name, stats) -> {
+                var row = new StringBuilder(String.format("%-6s", name));
+                for (var h : stats.windows) {
+                    row.append(String.format(" %7.1f /%7.1f", h.getValueAtPercentile(50) / 1000.0,
+                            h.getValueAtPercentile(99) / 1000.0));
+                }
+                System.out.println(row);
+            });
+        }
+    }
+
+    //Weekday half hours 9 to 5 for 8 weeks, every fifth one requested
+    private static int seed(JdbcTemplate jdbc) {
+        jdbc.update("""
+                INSERT INTO booking (start_time, end_time, status, name, email, phone_number, topic)
+                SELECT s, s + interval '30 minutes',
+                       CASE WHEN n % 5 = 0 THEN 'PENDING' ELSE 'AVAILABLE' END,
+                       CASE WHEN n % 5 = 0 THEN 'Warm Up ' || n END,
+                       CASE WHEN n % 5 = 0 THEN 'warmup' || n || '@example.com' END,
+                       CASE WHEN n % 5 = 0 THEN '01234567890' END,
+                       CASE WHEN n % 5 = 0 THEN 'Sizing' END
+                FROM (SELECT s, row_number() OVER (ORDER BY s) AS n
+                      FROM generate_series(CAST(? AS timestamptz), CAST(? AS timestamptz), interval '30 minutes') s
+                      WHERE extract(isodow FROM s) < 6 AND CAST(s AS time) >= '09:00' AND CAST(s AS time) < '17:00') t
+                """, LocalDate.now().plusDays(1).toString(), LocalDate.now().plusWeeks(8).toString());
+        return jdbc.queryForObject("SELECT count(*) FROM booking", Integer.class);
+    }
+
+    private void run(Variant variant, Map<String, String> env, int round, Stats stats) throws Exception {
+        int port = StartupBenchmark.freePort();
+        var command = new ArrayList<>(StartupBenchmark.java(List.of(), JAR.toAbsolutePath().toString()));
+        command.add("--server.port=" + port);
+        //Every request comes from localhost, the limiter would turn most of them away
+        command.add("--booking.rate-limit.enabled=false");
+        command.addAll(variant.args());
+        var log = OUT.resolve(variant.name() + "-" + round + ".log").toFile();
+        var builder = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log);
+        builder.environment().putAll(env);
+
+        var http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        String base = "http://localhost:" + port;
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try {
+            awaitReady(http, base, process, log.toString());
+            stats.readyMillis.recordValue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            String bearer = bearer(http, base);
+            List<HttpRequest> mix = mix(base, bearer);
+            sendFor(http, mix, stats);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) process.destroyForcibly().waitFor();
+        }
+    }
+
+    private static void awaitReady(HttpClient http, String base, Process process, String log) throws Exception {
+        var readiness = HttpRequest.newBuilder(URI.create(base + "/actuator/health/readiness"))
+                .timeout(Duration.ofSeconds(5)).build();
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < GIVE_UP.toNanos()) {
+            if (!process.isAlive()) throw new IllegalStateException("Exited, see " + log);
+            try {
+                if (http.send(readiness, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) return;
+            } catch (IOException notListeningYet) {
+                //Keep trying
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("Not ready within " + GIVE_UP + ", see " + log);
+    }
+
+    private static String bearer(HttpClient http, String base) throws Exception {
+        var login = HttpRequest.newBuilder(URI.create(base + "/auth/token"))
+                .header("Authorization", "Basic " + Base64.getEncoder()
+                        .encodeToString("startup:startup".getBytes(StandardCharsets.UTF_8)))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        String body = http.send(login, HttpResponse.BodyHandlers.ofString()).body();
+        return "Bearer " + new ObjectMapper().readTree(body).get("token").asText();
+    }
+
+    //Ten requests in the proportions above, picked from at random
+    private static List<HttpRequest> mix(String base, String bearer) {
+        var from = LocalDate.now().plusDays(7);
+        var publicList = get(base + "/booking/public").build();
+        var mix = new ArrayList<HttpRequest>();
+        for (int i = 0; i < 7; i++) mix.add(publicList);
+        mix.add(get(base + "/booking/public?from=" + from + "&to=" + from.plusDays(13)).build());
+        mix.add(get(base + "/booking/public/summary").build());
+        mix.add(get(base + "/booking/admin").header("Authorization", bearer).build());
+        return mix;
+    }
+
+    private static HttpRequest.Builder get(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(30)).GET();
+    }
+
+    private static void sendFor(HttpClient http, List<HttpRequest> mix, Stats stats) throws InterruptedException {
+        var random = new Random(42);
+        long interval = TimeUnit.SECONDS.toNanos(1) / RATE;
+        long total = (long) SECONDS * RATE;
+
+        try (var senders = Executors.newVirtualThreadPerTaskExecutor()) {
+            long start = System.nanoTime();
+            for (long i = 0; i < total; i++) {
+                long due = start + i * interval;
+                long wait = due - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+
+                var request = mix.get(random.nextInt(mix.size()));
+                boolean first = i == 0;
+                var window = stats.windows.get((int) (i * interval / TimeUnit.SECONDS.toNanos(WINDOW_SECONDS)));
+                senders.submit(() -> {
+                    int status;
+                    try {
+                        status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    } catch (Exception e) {
+                        status = -1;
+                    }
+                    long micros = Math.min((System.nanoTime() - due) / 1000, HIGHEST_MICROS);
+                    if (status != 200) stats.errors.increment();
+                    if (first) stats.firstRequest.recordValue(micros);
+                    stats.all.recordValue(micros);
+                    window.recordValue(micros);
+                });
+            }
+            senders.shutdown();
+            senders.awaitTermination(2, TimeUnit.MINUTES);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package chrisgreer.bookingsystem;
+
+import chrisgreer.bookingsystem.services.BookingService;
+import chrisgreer.bookingsystem.services.EmailService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockReset;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "booking.warm-up.iterations=3")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class WarmUpIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ApplicationAvailability availability;
+
+    //Not reset between tests, the warm-up calls were made while the context started
+    @MockitoSpyBean(reset = MockReset.NONE)
+    private BookingService bookingService;
+
+    @MockitoBean
+    private EmailService emailService;
+
+    @Test
+    void warmUp_runsTheReadPaths_andNothingElse() {
+        verify(bookingService, times(3)).getAvailabilitySummary(null, null);
+        verify(bookingService, times(3)).getBookingsVersion(null, false, false);
+        verify(bookingService, never()).createBooking(any());
+        verify(bookingService, never()).requestBooking(any(), any());
+        verify(bookingService, never()).updateBookingStatus(any(), any());
+        verify(bookingService, never()).deleteBooking(any());
+    }
+
+    @Test
+    void readiness_isUp_onceWarmedUp_withoutAuth() throws Exception {
+        assertEquals(ReadinessState.ACCEPTING_TRAFFIC, availability.getReadinessState());
+        mockMvc.perform(get("/actuator/health/readiness"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("UP"));
+    }
+}
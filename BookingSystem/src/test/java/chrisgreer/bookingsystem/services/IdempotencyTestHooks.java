@@ -0,0 +1,13 @@
+package chrisgreer.bookingsystem.services;
+
+/// Reaches the package-private parts of IdempotencyService the integration tests need
+public final class IdempotencyTestHooks {
+
+    private IdempotencyTestHooks() {
+    }
+
+    /// As if the request had reached another node: only the table knows the response
+    public static void forgetCachedResponses(IdempotencyService service) {
+        service.invalidateLocal();
+    }
+}